@@ -0,0 +1,225 @@
+package net.tiny.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * 保存的基准(Baseline)吞吐量，用于检测性能的退化。
+ * 每个测试保存计时窗口吞吐量(K/s)的个数、平均值和不偏分散，文件是Properties格式。
+ * <pre>
+ * net.tiny.benchmark.SomeTest.testTask@1 = 20,1234.5,56.7
+ * </pre>
+ * 比较时用Welch的t检验(单侧)：吞吐量比基准低threshold以上的概率足够高时判定为退化。
+ */
+final class Baseline implements ExtensionContext.Store.CloseableResource {
+
+    /** 基准文件的配置参数名 */
+    static final String FILE = "benchmark.baseline";
+    /** 为true时不比较，把本次结果写入基准文件 */
+    static final String WRITE = "benchmark.baseline.write";
+    /** 允许的吞吐量下降比例，默认5% */
+    static final String THRESHOLD = "benchmark.regression.threshold";
+    /** 判定退化的显著水平，默认0.05 */
+    static final String ALPHA = "benchmark.regression.alpha";
+
+    private final Path file;
+    private final boolean write;
+    private final Properties entries = new Properties();
+    private boolean changed = false;
+
+    Baseline(Path file, boolean write) {
+        this.file = file;
+        this.write = write;
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                entries.load(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    boolean writable() {
+        return write;
+    }
+
+    static String key(String className, String method, String params, int threads) {
+        final String name = null == params || params.isEmpty() ? method : method + "[" + params + "]";
+        return String.format("%s.%s@%d", className, name, Math.max(threads, 1));
+    }
+
+    synchronized void put(String key, Statistics statistics) {
+        entries.setProperty(key, String.format(Locale.ROOT, "%d,%s,%s",
+                statistics.count(), statistics.average(), variance(statistics)));
+        changed = true;
+    }
+
+    /**
+     * @return 基准的{个数, 平均值, 不偏分散}，没有时是null
+     */
+    synchronized double[] get(String key) {
+        final String value = entries.getProperty(key);
+        if (null == value)
+            return null;
+        final String[] values = value.split(",");
+        if (values.length != 3)
+            throw new IllegalArgumentException(String.format("Illegal baseline '%s=%s' in %s", key, value, file));
+        return new double[] {Double.parseDouble(values[0]), Double.parseDouble(values[1]), Double.parseDouble(values[2])};
+    }
+
+    /**
+     * 比较本次的吞吐量和基准。
+     * @return 比较结果，没有基准时是null
+     */
+    Comparison compare(String key, Statistics current, double threshold) {
+        final double[] base = get(key);
+        if (null == base || current.count() == 0L)
+            return null;
+        final double limit = base[1] * (1.0d - threshold);
+        final double scale = 1.0d - threshold;
+        final double se2 = variance(current) / current.count() + scale * scale * base[2] / base[0];
+        final double p;
+        if (se2 <= 0.0d) {
+            // 没有偏差时直接比较
+            p = current.average() < limit ? 0.0d : 1.0d;
+        } else {
+            // H0: 本次 >= 基准×(1-threshold)，H1: 本次 < 基准×(1-threshold)
+            final double t = (current.average() - limit) / Math.sqrt(se2);
+            final double df = welchDegrees(variance(current), current.count(), scale * scale * base[2], (long)base[0]);
+            p = studentCdf(t, df);
+        }
+        return new Comparison(current.average(), base[1], p);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!write || !changed)
+            return;
+        try {
+            if (null != file.toAbsolutePath().getParent())
+                Files.createDirectories(file.toAbsolutePath().getParent());
+            try (OutputStream out = Files.newOutputStream(file)) {
+                entries.store(out, "Benchmark baseline: count,average(K/s),variance");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 不偏分散
+    private static double variance(Statistics statistics) {
+        final long n = statistics.count();
+        return n > 1L ? statistics.variance() * n / (n - 1L) : 0.0d;
+    }
+
+    // Welch–Satterthwaite的自由度
+    static double welchDegrees(double v1, long n1, double v2, long n2) {
+        final double a = v1 / n1;
+        final double b = v2 / n2;
+        final double da = n1 > 1L ? a * a / (n1 - 1L) : 0.0d;
+        final double db = n2 > 1L ? b * b / (n2 - 1L) : 0.0d;
+        if (da + db == 0.0d)
+            return Math.max(n1 + n2 - 2L, 1L);
+        return (a + b) * (a + b) / (da + db);
+    }
+
+    // Student t分布的累积分布函数 P(T <= t)
+    static double studentCdf(double t, double df) {
+        final double x = df / (df + t * t);
+        final double tail = 0.5d * incompleteBeta(x, df / 2.0d, 0.5d);
+        return t < 0.0d ? tail : 1.0d - tail;
+    }
+
+    // 正则化不完全Beta函数 I_x(a, b)，连分数展开
+    static double incompleteBeta(double x, double a, double b) {
+        if (x <= 0.0d)
+            return 0.0d;
+        if (x >= 1.0d)
+            return 1.0d;
+        final double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b)
+                + a * Math.log(x) + b * Math.log(1.0d - x));
+        if (x < (a + 1.0d) / (a + b + 2.0d))
+            return front * betaFraction(x, a, b) / a;
+        return 1.0d - front * betaFraction(1.0d - x, b, a) / b;
+    }
+
+    private static double betaFraction(double x, double a, double b) {
+        final double tiny = 1e-300;
+        double c = 1.0d;
+        double d = 1.0d - (a + b) * x / (a + 1.0d);
+        d = Math.abs(d) < tiny ? tiny : d;
+        d = 1.0d / d;
+        double h = d;
+        for (int m = 1; m <= 300; m++) {
+            final int m2 = 2 * m;
+            double aa = m * (b - m) * x / ((a + m2 - 1.0d) * (a + m2));
+            d = 1.0d + aa * d;
+            d = Math.abs(d) < tiny ? tiny : d;
+            c = 1.0d + aa / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            d = 1.0d / d;
+            h *= d * c;
+            aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1.0d));
+            d = 1.0d + aa * d;
+            d = Math.abs(d) < tiny ? tiny : d;
+            c = 1.0d + aa / c;
+            c = Math.abs(c) < tiny ? tiny : c;
+            d = 1.0d / d;
+            final double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1.0d) < 1e-14d)
+                break;
+        }
+        return h;
+    }
+
+    // Lanczos近似
+    private static double logGamma(double x) {
+        final double[] g = {76.18009172947146d, -86.50532032941677d, 24.01409824083091d,
+                -1.231739572450155d, 0.1208650973866179e-2d, -0.5395239384953e-5d};
+        double y = x;
+        double tmp = x + 5.5d;
+        tmp -= (x + 0.5d) * Math.log(tmp);
+        double ser = 1.000000000190015d;
+        for (double c : g) {
+            ser += c / ++y;
+        }
+        return -tmp + Math.log(2.5066282746310005d * ser / x);
+    }
+
+    /**
+     * 和基准的比较结果
+     */
+    static final class Comparison {
+        final double current;
+        final double baseline;
+        final double p; // 吞吐量没有下降到允许范围以下的概率
+
+        Comparison(double current, double baseline, double p) {
+            this.current = current;
+            this.baseline = baseline;
+            this.p = p;
+        }
+
+        double change() {
+            return baseline == 0.0d ? 0.0d : current / baseline - 1.0d;
+        }
+
+        boolean regressed(double alpha) {
+            return p < alpha;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%+.1f%% vs baseline %.3fK/s, p=%.4f", change() * 100.0d, baseline, p);
+        }
+    }
+}
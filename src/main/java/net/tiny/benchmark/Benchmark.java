@@ -17,9 +17,26 @@ import java.util.concurrent.TimeUnit;
 @ExtendWith(BenchmarkExtension.class)
 public @interface Benchmark {
     int warmup() default 0; //即使预热指定为0，其实第一次Method的执行是作为预热执行的。
+    //大于0时是自适应预热，吞吐量的变异系数小于steady时结束预热，warmup是最大次数
+    double steady() default 0.0d;
     //measure指定小于1时，只做一般的@Test，测试结果是空
     int measure()  default 1; //实际上多次测试结果是在afterTestExecution执行中取得的。
-    int threads()  default 0;
+    int[] threads()  default 0; //指定多个时按各线程数分别测试，输出扩展性(USL)
+    Execution executor() default Execution.PLATFORM; //多线程的执行方式
     boolean trace() default false;
+    int batchSize() default 1; //连续调用的次数，之间不检查计数器和计时器
+    int operationsPerInvocation() default 1; //每次调用处理的操作数，吞吐量按操作数计算
+    boolean latency() default false; //记录每次调用的延迟，输出p50/p90/p99/p99.9/max
+    //测试Method返回CompletionStage时，每个线程同时未完成的最大个数，完成时才算一次调用
+    int inFlight() default 1;
+    long duration() default 0L; //大于0时是限时测试，每个线程在指定时间内反复执行，measure被忽略
     TimeUnit timeUnit() default TimeUnit.SECONDS;
+    //大于0时是所有线程合计rate次/秒的开环测试，延迟从预定时间算起，没有指定duration时按measure次数换算时间
+    double rate() default 0.0d;
+    //大于0时在N个新的子JVM中分别执行预热和测试，合并结果
+    int forks() default 0;
+    String[] jvmArgs() default {}; //子JVM的启动参数
+    long forkTimeout() default 600L; //每个子JVM的最长执行时间(秒)，超过时强制结束
+    //测试Class的排行榜中作为比较基准的Method，其他Method的speedup是对它的吞吐量比
+    boolean baseline() default false;
 }
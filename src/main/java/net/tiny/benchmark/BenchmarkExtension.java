@@ -1,16 +1,38 @@
 package net.tiny.benchmark;
 
+import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import org.junit.jupiter.api.TestTemplate;
 import org.junit.jupiter.api.extension.AfterAllCallback;
 import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
 import org.junit.jupiter.api.extension.BeforeAllCallback;
 import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ConditionEvaluationResult;
+import org.junit.jupiter.api.extension.ExecutionCondition;
+import org.junit.jupiter.api.extension.ExtensionConfigurationException;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.InvocationInterceptor;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolutionException;
+import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.jupiter.api.extension.ReflectiveInvocationContext;
+import org.junit.platform.commons.support.AnnotationSupport;
+import org.opentest4j.AssertionFailedError;
 
 public class BenchmarkExtension
-    implements BeforeAllCallback, BeforeTestExecutionCallback, AfterTestExecutionCallback, AfterAllCallback {
+    implements BeforeAllCallback, BeforeTestExecutionCallback, AfterTestExecutionCallback, AfterAllCallback,
+               ParameterResolver, InvocationInterceptor, ExecutionCondition {
 
     private static final Namespace NAMESPACE = Namespace.create("net", "tiny", "BenchmarkExtension");
 
@@ -28,37 +50,68 @@ public class BenchmarkExtension
         if(null == benchmark)
             return;
         Benchmarker launcher = new Benchmarker();
-        // Set Test target
-        launcher.target(context.getRequiredTestInstance(), context.getRequiredTestMethod());
         storeNowAsLaunchTime(context, getStoreKey(context, LaunchTimeKey.TEST), launcher);
+        //参数化测试的参数在执行时才能取得，绑定和预热在afterTestExecution中进行
+        if (parameterized(context.getRequiredTestMethod()))
+            return;
+        // Set Test target
+        target(launcher, context.getRequiredTestInstance(), context.getRequiredTestMethod(), null, states(context));
 
-        //warmup loop
-        if (benchmark.warmup() > 0) {
-            if (benchmark.trace())
-                launcher.run("warmup", benchmark.warmup());
-            else
-                launcher.run(benchmark.warmup());
+        //Fork时预热在子JVM中执行
+        if (benchmark.forks() < 1) {
+            warmup(benchmark, launcher);
         }
         //即使预热指定为0，其实第一次Method的执行是作为预热执行的。
     }
 
     //压力测试对象的Method先要被预热执行一次，实际测试结果是在afterTestExecution执行中取得的。
     @Override
-    public void afterTestExecution(ExtensionContext context) {
+    public void afterTestExecution(ExtensionContext context) throws Exception {
         Benchmark benchmark = getBenchmarkAnnotation(context);
         if(null == benchmark)
             return;
         Benchmarker launcher =
                 context.getStore(NAMESPACE).remove(getStoreKey(context, LaunchTimeKey.TEST), Benchmarker.class);
+        final Object[] arguments =
+                context.getStore(NAMESPACE).remove(getStoreKey(context, LaunchTimeKey.ARGUMENTS), Object[].class);
+        if (benchmark.duration() <= 0L && benchmark.measure() < 1)
+            return;
+        if (null != arguments) {
+            if (benchmark.forks() > 0) {
+                throw new ExtensionConfigurationException(String.format(
+                        "Parameterized benchmark '%s' can not run in forks.", context.getRequiredTestMethod()));
+            }
+            target(launcher, context.getRequiredTestInstance(), context.getRequiredTestMethod(), arguments, states(context));
+            warmup(benchmark, launcher);
+        }
+        final String params = params(arguments);
         //Measure loop
-        if (benchmark.measure() > 0) {
-            if (benchmark.trace())
-                launcher.run("measure", benchmark.measure(), benchmark.threads());
-            else
-                launcher.run(benchmark.measure(), benchmark.threads());
-            final int t = benchmark.threads() > 1 ? benchmark.threads() : 1;
-            report(String.format("'%d threads, %d times, Avg %s'", t, benchmark.measure(), launcher.average(benchmark.measure())),
-                    context, launcher);
+        final int[] levels = benchmark.threads().length > 0 ? benchmark.threads() : new int[] {0};
+        final double[] throughput = new double[levels.length];
+        final List<String> regressions = new ArrayList<>();
+        for (int i = 0; i < levels.length; i++) {
+            if (benchmark.forks() > 0) {
+                launcher = Fork.launch(benchmark, context.getRequiredTestClass(), context.getRequiredTestMethod(), levels[i]);
+            } else {
+                measure(benchmark, launcher, levels[i]);
+            }
+            throughput[i] = launcher.throughput();
+            // 对第一个线程数的每线程吞吐量比
+            final double efficiency = i > 0 ? (throughput[i] / Math.max(levels[i], 1))
+                    / (throughput[0] / Math.max(levels[0], 1)) : Double.NaN;
+            report(unit(benchmark, launcher, levels[i], efficiency), context, launcher);
+            export(benchmark, context, params, launcher);
+            leaderboard(context).add(context.getRequiredTestMethod().getName(), params, benchmark.baseline(), launcher);
+            compare(context, params, launcher, levels[i], regressions);
+            if (null != arguments) {
+                table(context).add(params, launcher);
+            }
+        }
+        if (levels.length > 1) {
+            context.publishReportEntry("Scalability", new Scalability(levels, throughput).toString());
+        }
+        if (!regressions.isEmpty()) {
+            throw new AssertionFailedError(String.join(System.lineSeparator(), regressions));
         }
     }
 
@@ -70,22 +123,281 @@ public class BenchmarkExtension
         report("Test container", context, launcher);
     }
 
+    //参数化测试(@ParameterizedTest等)每次执行时，保存实际的参数
+    @Override
+    public void interceptTestTemplateMethod(Invocation<Void> invocation,
+            ReflectiveInvocationContext<Method> invocationContext, ExtensionContext context) throws Throwable {
+        if (null != getBenchmarkAnnotation(context)) {
+            context.getStore(NAMESPACE).put(getStoreKey(context, LaunchTimeKey.ARGUMENTS),
+                    invocationContext.getArguments().toArray());
+        }
+        invocation.proceed();
+    }
+
+    //@Benchmark包含@Test，和@ParameterizedTest一起使用时，只按参数执行，不执行没有参数的@Test
+    @Override
+    public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+        final Optional<Method> method = context.getTestMethod();
+        if (method.isPresent() && AnnotationSupport.isAnnotated(method.get(), TestTemplate.class)) {
+            final String id = context.getUniqueId();
+            if (id.substring(id.lastIndexOf('/') + 1).startsWith("[method:"))
+                return ConditionEvaluationResult.disabled("Benchmark runs as the test template of " + method.get().getName());
+        }
+        // 当前的JVM不支持的执行方式(虚拟线程)不测试
+        final Optional<Benchmark> benchmark = method.flatMap(m -> AnnotationSupport.findAnnotation(m, Benchmark.class));
+        if (benchmark.isPresent() && !benchmark.get().executor().supported())
+            return ConditionEvaluationResult.disabled(String.format("Execution %s is not supported by this JVM.",
+                    benchmark.get().executor().name()));
+        return ConditionEvaluationResult.enabled("");
+    }
+
+    @Override
+    public boolean supportsParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        return injected(parameterContext.getParameter().getType());
+    }
+
+    //JUnit执行的第一次调用使用0号Worker的状态对象
+    @Override
+    public Object resolveParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
+        final Class<?> type = parameterContext.getParameter().getType();
+        if (States.isState(type))
+            return states(extensionContext).get(type, 0);
+        return new Blackhole();
+    }
+
     // HELPER
+    // 每个线程绑定各自的Blackhole参数和THREAD范围的状态对象
+    // 参数化测试时，其他参数是所有线程共用的实际参数
+    static void target(Benchmarker launcher, Object instance, Method method, Object[] arguments, States states) {
+        final Class<?>[] types = method.getParameterTypes();
+        for (int j = 0; j < types.length; j++) {
+            if (!injected(types[j]) && (null == arguments || arguments.length <= j)) {
+                throw new ParameterResolutionException(String.format(
+                        "Unsupported parameter type '%s' of benchmark method '%s'.", types[j].getName(), method));
+            }
+        }
+        final Function<Object[], Supplier<Object>> factory = Invoker.factory(instance, method);
+        launcher.targets(i -> {
+            final Object[] args = new Object[types.length];
+            final Blackhole blackhole = new Blackhole();
+            for (int j = 0; j < types.length; j++) {
+                if (Blackhole.class.equals(types[j])) {
+                    args[j] = blackhole;
+                } else if (States.isState(types[j])) {
+                    args[j] = states.get(types[j], i);
+                } else {
+                    args[j] = arguments[j];
+                }
+            }
+            final Supplier<Object> supplier = factory.apply(args);
+            if (types.length == 0)
+                return supplier;
+            // Blackhole接收的CompletionStage作为调用结果，等待完成
+            return () -> {
+                supplier.get();
+                return blackhole.stage();
+            };
+        }, i -> {
+            // 状态对象的Level.BATCH/ITERATION的Setup/TearDown
+            final Hooks hooks = new Hooks();
+            for (Class<?> type : types) {
+                if (States.isState(type))
+                    States.hooks(states.get(type, i), hooks);
+            }
+            return hooks;
+        });
+    }
+
+    // 由本Extension注入的参数
+    private static boolean injected(Class<?> type) {
+        return Blackhole.class.equals(type) || States.isState(type);
+    }
+
+    private static boolean parameterized(Method method) {
+        return Arrays.stream(method.getParameterTypes()).anyMatch(type -> !injected(type));
+    }
+
+    // 结果和基准中使用的参数表示，Blackhole和状态对象除外
+    private static String params(Object[] arguments) {
+        if (null == arguments)
+            return "";
+        return Arrays.stream(arguments)
+                .filter(arg -> null == arg || !injected(arg.getClass()))
+                .map(String::valueOf)
+                .collect(Collectors.joining(", "));
+    }
+
+    // 同一个参数化测试的结果表，保存在测试模板的Store中
+    private static ParameterTable table(ExtensionContext context) {
+        final ExtensionContext template = context.getParent().orElse(context);
+        return template.getStore(NAMESPACE).getOrComputeIfAbsent(
+                getStoreKey(context, LaunchTimeKey.TABLE), key -> new ParameterTable(template), ParameterTable.class);
+    }
+
     private static void storeNowAsLaunchTime(ExtensionContext context, String key, Benchmarker launcher) {
         context.getStore(NAMESPACE).put(key, launcher);
     }
 
+    static void warmup(Benchmark benchmark, Benchmarker launcher) {
+        final String prefix = benchmark.trace() ? "warmup" : null;
+        launcher.batch(benchmark.batchSize())
+                .operations(benchmark.operationsPerInvocation())
+                .inFlight(benchmark.inFlight());
+        if (benchmark.warmup() > 0 && benchmark.steady() > 0.0d) {
+            launcher.warmup(prefix, benchmark.warmup(), benchmark.steady());
+        } else if (benchmark.warmup() > 0) {
+            launcher.run(prefix, benchmark.warmup());
+        }
+    }
+
+    static void measure(Benchmark benchmark, Benchmarker launcher, int threads) {
+        final String prefix = benchmark.trace() ? "measure" : null;
+        launcher.batch(benchmark.batchSize())
+                .operations(benchmark.operationsPerInvocation())
+                .inFlight(benchmark.inFlight())
+                .execution(benchmark.executor())
+                .latency(benchmark.latency());
+        if (benchmark.rate() > 0.0d) {
+            final long nano = benchmark.duration() > 0L ? benchmark.timeUnit().toNanos(benchmark.duration())
+                    : (long)(benchmark.measure() * Math.max(threads, 1) * 1e9d / benchmark.rate());
+            launcher.runAtRate(prefix, benchmark.rate(), Duration.ofNanos(Math.max(nano, 1L)), threads);
+        } else if (benchmark.duration() > 0L) {
+            final Duration duration = Duration.ofNanos(benchmark.timeUnit().toNanos(benchmark.duration()));
+            launcher.run(prefix, duration, threads);
+        } else {
+            launcher.run(prefix, benchmark.measure(), threads);
+        }
+    }
+
+    /**
+     * @param efficiency 多个线程数时的扩展效率，没有时是NaN
+     */
+    private static String unit(Benchmark benchmark, Benchmarker launcher, int threads, double efficiency) {
+        final int t = threads > 1 ? threads : 1;
+        final int forks = Math.max(benchmark.forks(), 1);
+        String unit;
+        if (benchmark.rate() > 0.0d) {
+            final long times = Math.max(launcher.count(), 1L);
+            unit = String.format("%d threads, %.1f ops/s, %d times, Avg %s", t, benchmark.rate(),
+                    launcher.count(), launcher.average(times));
+        } else if (benchmark.duration() > 0L) {
+            final long times = Math.max(launcher.count(), 1L);
+            unit = String.format("%d threads, %d %s, %d times, Avg %s", t, benchmark.duration(),
+                    benchmark.timeUnit().name().toLowerCase(), launcher.count(), launcher.average(times));
+        } else {
+            unit = String.format("%d threads, %d times, Avg %s", t, benchmark.measure(),
+                    launcher.average((long)benchmark.measure() * forks));
+        }
+        if (benchmark.forks() > 0) {
+            unit = String.format("%d forks, ", benchmark.forks()).concat(unit);
+        }
+        if (t > 1 && Execution.PLATFORM != benchmark.executor()) {
+            unit = unit.concat(", ").concat(benchmark.executor().name().toLowerCase());
+        }
+        //测试Loop每次调用的开销和计时器的精度
+        final Calibration calibration = Calibration.get();
+        unit = unit.concat(String.format(", overhead %.1fns, timer %dns",
+                launcher.harness >= 0.0d ? launcher.harness : calibration.overhead(false), calibration.granularity()));
+        if (benchmark.steady() > 0.0d) {
+            unit = unit.concat(String.format(", warmup %d times", launcher.warmups()));
+        }
+        if (!Double.isNaN(efficiency)) {
+            unit = unit.concat(String.format(", efficiency %.1f%%", efficiency * 100.0d));
+        }
+        return "'" + unit + "'";
+    }
+
     private static void report(String unit, ExtensionContext context, Benchmarker launcher) {
         String message = launcher.metric(context.getDisplayName());
         context.publishReportEntry(unit, message);
     }
 
+    //指定了输出目录时，测试结果逐个写到JSON和CSV文件
+    //Writer保存在测试Class的Store中，Class的测试全部结束时由JUnit关闭
+    private static void export(Benchmark benchmark, ExtensionContext context, String params, Benchmarker launcher) {
+        final Optional<String> dir = context.getConfigurationParameter(ResultWriter.DIRECTORY);
+        if (!dir.isPresent())
+            return;
+        final ResultWriter writer = classContext(context).getStore(NAMESPACE).getOrComputeIfAbsent(
+                getStoreKey(context, LaunchTimeKey.WRITER),
+                key -> new ResultWriter(Paths.get(dir.get()), context.getRequiredTestClass().getName()),
+                ResultWriter.class);
+        writer.write(new Result(context.getRequiredTestClass().getName(), context.getRequiredTestMethod().getName(),
+                params, benchmark.forks(), launcher));
+    }
+
+    //状态对象保存在测试Method的Store中，测试结束时由JUnit关闭(执行@TearDown)
+    //SHARED范围的状态对象保存在测试Class的Store中
+    private static States states(ExtensionContext context) {
+        final ExtensionContext parent = classContext(context);
+        final States shared = parent.getStore(NAMESPACE).getOrComputeIfAbsent(
+                getStoreKey(context, LaunchTimeKey.SHARED), key -> new States(null), States.class);
+        return context.getStore(NAMESPACE).getOrComputeIfAbsent(
+                getStoreKey(context, LaunchTimeKey.STATES), key -> new States(shared), States.class);
+    }
+
+    //排行榜保存在测试Class的Store中，Class的测试全部结束时由JUnit关闭并输出
+    private static Leaderboard leaderboard(ExtensionContext context) {
+        final ExtensionContext parent = classContext(context);
+        return parent.getStore(NAMESPACE).getOrComputeIfAbsent(getStoreKey(context, LaunchTimeKey.LEADERBOARD),
+                key -> new Leaderboard(parent), Leaderboard.class);
+    }
+
+    //测试Method(包括参数化测试的各次执行)所属的测试Class的Context
+    private static ExtensionContext classContext(ExtensionContext context) {
+        ExtensionContext parent = context;
+        while (parent.getTestMethod().isPresent() && parent.getParent().isPresent()) {
+            parent = parent.getParent().get();
+        }
+        return parent;
+    }
+
+    //指定了基准文件时，和基准比较吞吐量，退化时记录错误信息(测试失败)
+    private static void compare(ExtensionContext context, String params, Benchmarker launcher, int threads,
+            List<String> regressions) {
+        final Optional<String> file = context.getConfigurationParameter(Baseline.FILE);
+        if (!file.isPresent())
+            return;
+        final Baseline baseline = context.getRoot().getStore(NAMESPACE).getOrComputeIfAbsent(Baseline.FILE,
+                key -> new Baseline(Paths.get(file.get()),
+                        context.getConfigurationParameter(Baseline.WRITE).map(Boolean::parseBoolean).orElse(false)),
+                Baseline.class);
+        final String key = Baseline.key(context.getRequiredTestClass().getName(),
+                context.getRequiredTestMethod().getName(), params, threads);
+        if (baseline.writable()) {
+            baseline.put(key, launcher.statistics);
+            return;
+        }
+        final double threshold = context.getConfigurationParameter(Baseline.THRESHOLD).map(Double::parseDouble).orElse(0.05d);
+        final double alpha = context.getConfigurationParameter(Baseline.ALPHA).map(Double::parseDouble).orElse(0.05d);
+        final Baseline.Comparison comparison = baseline.compare(key, launcher.statistics, threshold);
+        if (null == comparison)
+            return;
+        context.publishReportEntry("Baseline", comparison.toString());
+        if (comparison.regressed(alpha)) {
+            regressions.add(String.format("Performance regression of '%s' beyond %.1f%%: %s",
+                    key, threshold * 100.0d, comparison));
+        }
+    }
+
     private static String getStoreKey(ExtensionContext context, LaunchTimeKey key) {
         String storedKey = key.name();
         switch(key) {
         case CLASS:
             storedKey = context.getRequiredTestClass().getName();
             break;
+        case WRITER:
+        case LEADERBOARD:
+        case SHARED:
+            storedKey = context.getRequiredTestClass().getName().concat(".").concat(key.name().toLowerCase());
+            break;
+        case ARGUMENTS:
+        case TABLE:
+        case STATES:
+            storedKey = context.getRequiredTestClass().getName().concat(".")
+                                 .concat(context.getRequiredTestMethod().getName())
+                                 .concat(".").concat(key.name().toLowerCase());
+            break;
         case TEST:
             storedKey = context.getRequiredTestInstance().getClass().getSimpleName();
             storedKey = storedKey.concat(".")
@@ -107,6 +419,6 @@ public class BenchmarkExtension
     }
 
     private enum LaunchTimeKey {
-        CLASS, TEST
+        CLASS, TEST, WRITER, ARGUMENTS, TABLE, LEADERBOARD, STATES, SHARED
     }
 }
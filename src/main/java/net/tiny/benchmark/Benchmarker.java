@@ -1,19 +1,32 @@
 package net.tiny.benchmark;
 
 import java.io.PrintStream;
+import java.io.Serializable;
 import java.lang.reflect.Method;
-import java.util.concurrent.CountDownLatch;
+import java.time.Duration;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
-public class Benchmarker {
+public class Benchmarker implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     public static final long TOTAL = (long)2e6; //2,000,000
     private static final long TRACE_LENGTH = 100000L;
+    private static final int DURATION_WINDOWS = 10; // 限时测试按时间分成10个计时窗口
+    private static final long MIN_WINDOW = 1000000L; // 1ms
+    private static final long MAX_WINDOW = 1000000000L; // 1s
+    private static final int STEADY_WINDOW = 5;
+    private static final long STEADY_TRACES = 100L;
     private static final double NANO_PER_MILL = (double)1000000.0d;   //1.0E6;
+    private static final double KEEP_UP = 0.95d; // 实际速率达到目标速率的95%以上时判定为跟上了
+    private static final double NOISE = 2.0d; // 测试对象的开销在测试工具开销的2倍以内时，结果在误差范围内
 
     Statistics statistics = new Statistics();
     long total;
     long traces = TRACE_LENGTH;
+    long nextTrace = TRACE_LENGTH;
     long count = 0L;
     long startTime;
     long startNanoTime;
@@ -27,15 +40,50 @@ public class Benchmarker {
     long ntime; // nano second
     double time; // second
     long lost;
+    int threads = 1;
+    int concurrency = 1; // 同时执行的线程数，FORK_JOIN的线程数超过并行度时小于threads
+    long warmups = 0L;
+    int batch = 1;
+    int operations = 1;
+    Execution execution = Execution.PLATFORM;
+    int inFlight = 1;
+    Histogram histogram; // 最后一次测试的延迟
+    boolean latency; // 是否记录延迟，开环测试时临时为true
+    double rate; // 开环测试的目标速率(ops/s)，0是一般的闭环测试
+    long maxLag;
+    long late;
+    long allocated = -1L; // 所有线程分配的内存(byte)，不支持时是-1
+    long cpuTime = -1L; // 所有线程的CPU时间(ns)，不支持时是-1
+    long userTime = -1L; // 所有线程用户模式的CPU时间(ns)
+    long gcCount; // 测试中GC的次数
+    long gcTime; // 测试中GC的累计时间(ms)
+    double harness = -1.0d; // 测试Loop每次调用的开销(ns)，没有校准时是-1
+    long startup; // 每次测试的固定开销(ns)
+    long paused; // 所有线程的Setup/TearDown(Level.BATCH/ITERATION)的合计时间(ns)，不计入测试时间
 
-    Supplier<Object> target;
+    transient double pacing; // 执行中的开环测试速率
+    transient IntFunction<Supplier<Object>> target; // 按线程生成测试对象
+    transient IntFunction<Hooks> hooks; // 按线程生成Setup/TearDown，没有时是null
 
     public void reset() {
         statistics.clear();;
         count = 0;
+        threads = 1;
+        concurrency = 1;
         time = 0.0d;
         ntime = 0L;
         lost = 0L;
+        rate = 0.0d;
+        maxLag = 0L;
+        late = 0L;
+        allocated = -1L;
+        cpuTime = -1L;
+        userTime = -1L;
+        gcCount = 0L;
+        gcTime = 0L;
+        paused = 0L;
+        // 延迟只记录本次测试的调用
+        histogram = latency ? new Histogram() : null;
     }
 
     public void start(long total) {
@@ -46,11 +94,14 @@ public class Benchmarker {
         assert(total > 0L);
         this.total = total;
         this.traces = traces;
+        this.nextTrace = traces;
         reset();
         this.startTime = System.currentTimeMillis();
         this.startNanoTime = System.nanoTime();
         this.msTime = startTime;
         this.nanoTime = startNanoTime;
+        this.gcCount = Probe.gcCount();
+        this.gcTime = Probe.gcTime();
     }
     public void start() {
         start(TOTAL);
@@ -62,14 +113,16 @@ public class Benchmarker {
     public void stop() {
         this.stopTime = System.currentTimeMillis();
         this.stopNanoTime = System.nanoTime();
-        sec = (stopTime - startTime) / 1000L;
-        nsec = stopNanoTime - startNanoTime;
-        if (nsec < 0) {
-            sec -= 1;
-            nsec += 1000000000L;
-        }
-        time += (double)sec + (double)nsec / 1000000000.0;
-        ntime += sec * 1000000000L + nsec - lost;
+        // 经过时间只用nanoTime()计算，currentTimeMillis()只作为时刻记录
+        final long elapsed = stopNanoTime - startNanoTime;
+        sec = elapsed / 1000000000L;
+        nsec = elapsed % 1000000000L;
+        time += (double)elapsed / 1000000000.0;
+        // 各线程的Setup/TearDown是并行执行的，取平均值
+        ntime += elapsed - lost - paused / concurrency;
+        // start()时记录的是开始时的累计值
+        gcCount = Probe.gcCount() - gcCount;
+        gcTime = Probe.gcTime() - gcTime;
     }
 
     public void stop(PrintStream out) {
@@ -88,12 +141,14 @@ public class Benchmarker {
     }
 
     public void trace(String prefix, PrintStream out) {
-        if (((count + 1) % traces) == 0) {
+        if (count + 1L >= nextTrace) {
+            nextTrace += traces;
             final long now = System.nanoTime();
             final long t = now - nanoTime;
             final double k = kips((double)t, traces);
             if(null != out && prefix != null) {
-                out.println(String.format("%s[%07d]\t%s\t%.3fK/s", prefix, count, elapsed(t), k));
+                // 格式化和输出由后台线程执行
+                TraceSink.shared().publish(prefix, out, count, t, k);
             }
             statistics.push(k);
             lost += (System.nanoTime() - now);
@@ -103,7 +158,8 @@ public class Benchmarker {
     }
 
     public void trace() {
-        if (((count + 1) % traces) == 0) {
+        if (count + 1L >= nextTrace) {
+            nextTrace += traces;
             final long now = System.nanoTime();
             final long t = now - nanoTime;
             //statistics.push((double)t);
@@ -119,6 +175,7 @@ public class Benchmarker {
     }
 
     public void metric(String prefix, PrintStream out) {
+        TraceSink.shared().flush();
         out.println(metric(prefix));
     }
 
@@ -131,21 +188,169 @@ public class Benchmarker {
         if(statistics.count() == 0) {
             statistics.push(kips((double)ntime, num));
         }
-        return String.format("%s %s count:%d lost:%s",
+        String metric = String.format("%s %s count:%d lost:%s",
                 prefix, summary(num), count(), elapsed(lost));
+        if (allocated >= 0L) {
+            metric = metric.concat(String.format(" alloc:%.1fB/op", allocation()));
+        }
+        if (cpuTime >= 0L) {
+            metric = metric.concat(String.format(" cpu:%.1fns/op user:%.1fns/op util:%.1f%%",
+                    cpu(), user(), utilization() * 100.0d));
+        }
+        metric = metric.concat(String.format(" gc:%d(%dms)", gcCount, gcTime));
+        if (concurrency < threads) {
+            // 同时执行的只有concurrency个，限时测试的时间也相应延长
+            metric = metric.concat(String.format(" queued:%d/%d", threads - concurrency, threads));
+        }
+        if (paused > 0L) {
+            metric = metric.concat(String.format(" setup:%s", elapsed(paused)));
+        }
+        if (null != histogram && histogram.count() > 0L) {
+            metric = metric.concat(" ").concat(histogram.toString());
+        }
+        if (harness >= 0.0d) {
+            metric = metric.concat(String.format(" raw:%.1fns/op corrected:%.1fns/op%s",
+                    nanos(), correctedNanos(), noisy() ? " noisy" : ""));
+        }
+        if (rate > 0.0d) {
+            metric = metric.concat(String.format(" rate:%.3fK/s target:%.3fK/s late:%d maxlag:%s %s",
+                    throughput() / 1000.0d, rate / 1000.0d, late, elapsed(maxLag),
+                    keptUp() ? "kept-up" : "fell-behind"));
+        }
+        return metric;
+    }
+
+    //合计吞吐量(ops/s)，按墙上时间计算
+    public double throughput() {
+        if (ntime <= 0L || count() <= 0L)
+            return 0.0d;
+        return (double)count() * operations * 1000000000.0d / (double)ntime;
+    }
+
+    /**
+     * 每个操作的时间(ns)，多线程时是每个线程的时间(按同时执行的线程数计算)
+     */
+    public double nanos() {
+        if (count() <= 0L)
+            return 0.0d;
+        return (double)ntime * concurrency / ((double)count() * operations);
+    }
+
+    /**
+     * 减去测试工具开销(固定开销和测试Loop每次调用的开销)后的时间(ns)，没有校准时和ntime相同
+     */
+    public long corrected() {
+        if (harness < 0.0d || count() <= 0L)
+            return ntime;
+        final long t = ntime - startup - (long)(harness * count() / concurrency);
+        return Math.max(t, 1L);
+    }
+
+    public double correctedNanos() {
+        if (count() <= 0L)
+            return 0.0d;
+        return (double)corrected() * concurrency / ((double)count() * operations);
+    }
+
+    public double correctedThroughput() {
+        if (count() <= 0L)
+            return 0.0d;
+        return (double)count() * operations * 1000000000.0d / (double)corrected();
+    }
+
+    /**
+     * 测试对象每次调用的时间在测试工具开销的误差范围内，结果主要是测试工具的开销
+     */
+    public boolean noisy() {
+        if (harness < 0.0d || count() <= 0L)
+            return false;
+        return (double)corrected() * concurrency / count() <= harness * NOISE;
+    }
+
+    /**
+     * 每个操作分配的内存(byte)，不支持时是-1
+     */
+    public double allocation() {
+        if (allocated < 0L || count() <= 0L)
+            return -1.0d;
+        return (double)allocated / ((double)count() * operations);
+    }
+
+    /**
+     * 每个操作使用的CPU时间(ns)，不支持时是-1
+     */
+    public double cpu() {
+        if (cpuTime < 0L || count() <= 0L)
+            return -1.0d;
+        return (double)cpuTime / ((double)count() * operations);
+    }
+
+    /**
+     * 每个操作在用户模式下使用的CPU时间(ns)，不支持时是-1
+     */
+    public double user() {
+        if (userTime < 0L || count() <= 0L)
+            return -1.0d;
+        // 用户模式时间的精度是时钟中断(ms单位)，可能超过CPU时间
+        final long t = cpuTime >= 0L ? Math.min(userTime, cpuTime) : userTime;
+        return (double)t / ((double)count() * operations);
+    }
+
+    /**
+     * CPU使用率，所有测试线程一直占用CPU时是1.0，等待(sleep/IO/锁)越多越低，不支持时是-1
+     */
+    public double utilization() {
+        if (cpuTime < 0L || ntime <= 0L)
+            return -1.0d;
+        // CPU时间包括Setup/TearDown
+        return (double)cpuTime / ((double)ntime * concurrency + paused);
+    }
+
+    public long gcCount() {
+        return gcCount;
+    }
+
+    /**
+     * 所有线程的Setup/TearDown(Level.BATCH/ITERATION)的合计时间(ns)，不包括在测试时间中
+     */
+    public long paused() {
+        return paused;
+    }
+
+    public long gcTime() {
+        return gcTime;
+    }
+
+    /**
+     * 开环测试时，实际的速率是否达到了目标速率
+     */
+    public boolean keptUp() {
+        return rate <= 0.0d || throughput() >= rate * KEEP_UP;
+    }
+
+    public double rate() {
+        return rate;
+    }
+
+    public long late() {
+        return late;
+    }
+
+    public long maxLag() {
+        return maxLag;
     }
 
     public String elapsed() {
         return elapsed(ntime);
     }
 
-    public String average(int times) {
-        return elapsed(ntime/(long)times);
+    public String average(long times) {
+        return elapsed(ntime/times);
     }
 
     private String summary(double num) {
-        //KIPS (Kilo Instructions Per Second))
-        double kips = statistics.mean();
+        //KIPS (Kilo Instructions Per Second)) 多线程时是各线程合计的吞吐量，由总次数和测试时间计算
+        double kips = count() > 0L && ntime > 0L ? throughput() / 1000.0d : statistics.mean() * concurrency;
         //MIPS (Million Instructions Per Second) 1K/s ÷ 1000
         double mips = kips / 1000.0d;
         double p = 1.0d / statistics.mean(); // An operation elapsed millis
@@ -157,11 +362,11 @@ public class Benchmarker {
                 statistics.geometricMean());
     }
 
-    private double kips(double nano, double num) {
+    static double kips(double nano, double num) {
         return num * NANO_PER_MILL / nano; // 1 millis run operations
     }
 
-    private String elapsed(long nano) {
+    static String elapsed(long nano) {
         long s = nano / 1000000000L;
         long ms = (nano - (s * 1000000000L)) / 1000000L;
         long ns = nano - (s * 1000000000L) - (ms * 1000000L);
@@ -181,22 +386,129 @@ public class Benchmarker {
         return sb.toString();
     }
 
+    /**
+     * 用LambdaMetafactory生成的Supplier直接调用测试对象的Method，不经过反射。
+     */
     public Benchmarker target(Object obj, Method method, Object... args) {
-        target = new Supplier<Object>() {
-            @Override
-            public Object get() {
-                try {
-                    return method.invoke(obj);
-                } catch (Exception e) {
-                    return e;
-                }
-            }
-        };
+        final Supplier<Object> supplier = Invoker.bind(obj, method, args);
+        target = i -> supplier;
+        hooks = null;
         return this;
     }
 
+    /**
+     * 测试对象的返回值会被Blackhole消费，防止计算被JIT删除。
+     */
     public Benchmarker target(Supplier<Object> target) {
+        this.target = i -> target;
+        hooks = null;
+        return this;
+    }
+
+    /**
+     * 每个线程使用各自的Blackhole调用测试对象。
+     * <pre>
+     * bench.target(blackhole -> blackhole.consume(task.norm()));
+     * </pre>
+     */
+    public Benchmarker target(Consumer<Blackhole> target) {
+        this.target = i -> {
+            final Blackhole blackhole = new Blackhole();
+            return () -> {
+                target.accept(blackhole);
+                return blackhole.stage();
+            };
+        };
+        hooks = null;
+        return this;
+    }
+
+    // 按线程生成测试对象和Setup/TearDown，index是线程的序号
+    Benchmarker targets(IntFunction<Supplier<Object>> target, IntFunction<Hooks> hooks) {
         this.target = target;
+        this.hooks = hooks;
+        return this;
+    }
+
+    /**
+     * 测试对象的准备处理，target()之后指定，target()时被清除。
+     * Level.BATCH和Level.ITERATION在测试中由各线程执行，时间不计入测试时间和延迟，另外由paused()取得。
+     * Level.TRIAL在每次run()的开始前执行。
+     * <pre>
+     * bench.target(() -> sort(array))
+     *      .setup(Level.ITERATION, () -> shuffle(array))
+     *      .run(1000L);
+     * </pre>
+     */
+    public Benchmarker setup(Level level, Runnable hook) {
+        final IntFunction<Hooks> previous = hooks;
+        hooks = i -> (null == previous ? new Hooks() : previous.apply(i)).setup(level, hook);
+        return this;
+    }
+
+    /**
+     * 测试对象的后处理，Level.TRIAL在每次run()的结束后执行。
+     */
+    public Benchmarker tearDown(Level level, Runnable hook) {
+        final IntFunction<Hooks> previous = hooks;
+        hooks = i -> (null == previous ? new Hooks() : previous.apply(i)).tearDown(level, hook);
+        return this;
+    }
+
+    /**
+     * 记录每次调用的延迟，测试结果中输出p50/p90/p99/p99.9/max。
+     * 每次调用会多两次System.nanoTime()的开销。
+     */
+    public Benchmarker latency(boolean enable) {
+        latency = enable;
+        histogram = enable ? new Histogram() : null;
+        return this;
+    }
+
+    public Histogram histogram() {
+        return histogram;
+    }
+
+    /**
+     * 多线程测试的执行方式，默认是常驻的平台线程池。
+     * 当前的JVM不支持时，多线程测试抛出UnsupportedOperationException。
+     */
+    public Benchmarker execution(Execution execution) {
+        this.execution = execution;
+        return this;
+    }
+
+    /**
+     * 连续调用size次测试对象后才检查一次计数器和计时器，用于测试非常短的处理。
+     * 执行次数仍然按调用次数计算。
+     */
+    public Benchmarker batch(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Batch size must be greater than 0: " + size);
+        batch = size;
+        return this;
+    }
+
+    /**
+     * 每次调用测试对象所处理的操作数，吞吐量(K/s)按操作数计算。
+     * 例如一次调用处理1000件数据时，指定1000得到每件数据的吞吐量。
+     */
+    public Benchmarker operations(int ops) {
+        if (ops < 1)
+            throw new IllegalArgumentException("Operations must be greater than 0: " + ops);
+        operations = ops;
+        return this;
+    }
+
+    /**
+     * 测试对象返回CompletionStage时，完成后才算一次调用，吞吐量和延迟按完成计算。
+     * 每个线程同时未完成的CompletionStage最多max个，默认是1(等待完成后再调用下一次)。
+     * 开环测试(runAtRate)按预定时间调用，不等待完成，不受这个限制。
+     */
+    public Benchmarker inFlight(int max) {
+        if (max < 1)
+            throw new IllegalArgumentException("In-flight must be greater than 0: " + max);
+        inFlight = max;
         return this;
     }
 
@@ -217,64 +529,280 @@ public class Benchmarker {
         if(target == null)
             throw new IllegalArgumentException("");
         if (threads > 1) {
-            exec(target, prefix, loop, per, threads);
+            exec(target, prefix, loop, per, 0L, threads);
+        } else {
+            exec(target, prefix, loop, per, 0L);
+        }
+    }
+
+    /**
+     * 自适应预热，每个计时窗口的吞吐量在最近5个窗口内的变异系数小于threshold时结束。
+     * @param max 预热的最大次数
+     * @param threshold 变异系数，例如 0.05
+     * @return 实际预热的次数
+     */
+    public long warmup(long max, double threshold) {
+        return warmup(null, max, threshold);
+    }
+
+    public long warmup(String prefix, long max, double threshold) {
+        if(target == null)
+            throw new IllegalArgumentException("");
+        if (threshold <= 0.0d)
+            throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+        final long per = Math.max(Math.min(max / (STEADY_WINDOW * 2L), STEADY_TRACES), 1L);
+        final Worker worker = worker(target.apply(0), prefix, max, per, 0L, false);
+        worker.steady = threshold;
+        worker.window = STEADY_WINDOW;
+        final Hooks trial = hook(worker, 0);
+        Hooks.run(trial.setup(Level.TRIAL));
+        start(max, per);
+        worker.run();
+        collect(new Worker[] {worker}, 1);
+        stop();
+        Hooks.run(trial.tearDown(Level.TRIAL));
+        flush(prefix);
+        rethrow(worker);
+        warmups = count();
+        return warmups;
+    }
+
+    public long warmups() {
+        return warmups;
+    }
+
+    /**
+     * 限时测试，每个线程在指定的时间内反复执行测试对象。
+     * 实际执行的次数由count()取得。
+     */
+    public void run(Duration duration) {
+        run(null, duration, 0);
+    }
+    public void run(Duration duration, int threads) {
+        run(null, duration, threads);
+    }
+
+    public void run(String prefix, Duration duration, int threads) {
+        if(target == null)
+            throw new IllegalArgumentException("");
+        final long nano = duration.toNanos();
+        if (nano <= 0L)
+            throw new IllegalArgumentException("Duration must be positive: " + duration);
+        if (threads > 1) {
+            exec(target, prefix, Long.MAX_VALUE, TRACE_LENGTH, nano, threads);
         } else {
-            exec(target, prefix, loop, per);
+            exec(target, prefix, Long.MAX_VALUE, TRACE_LENGTH, nano);
         }
     }
 
+    /**
+     * 开环(Open-loop)的固定速率测试，所有线程合计每秒调用opsPerSecond次。
+     * 调用按预定的开始时间排列，测试对象变慢时排队的时间也计入延迟(Coordinated omission修正)，
+     * 延迟一定被记录，batch被忽略。是否跟上了目标速率由keptUp()取得。
+     */
+    public void runAtRate(double opsPerSecond, Duration duration, int threads) {
+        runAtRate(null, opsPerSecond, duration, threads);
+    }
+
+    public void runAtRate(String prefix, double opsPerSecond, Duration duration, int threads) {
+        if (opsPerSecond <= 0.0d)
+            throw new IllegalArgumentException("Rate must be positive: " + opsPerSecond);
+        // 开环测试总是记录延迟，结束后恢复原来的设定，本次的延迟留在histogram()中
+        final boolean enabled = latency;
+        latency = true;
+        pacing = opsPerSecond;
+        try {
+            run(prefix, duration, threads);
+        } finally {
+            pacing = 0.0d;
+            latency = enabled;
+        }
+        rate = opsPerSecond;
+    }
+
     public void run(Object obj, Method method, Object... args) {
         run(null, obj, method, args);
     }
 
     public void run(String prefix, Object obj, Method method, Object... args) {
-        exec(new Supplier<Object>() {
-            @Override
-            public Object get() {
-                try {
-                    return method.invoke(obj);
-                } catch (Exception e) {
-                    return e;
-                }
-            }
-        }, prefix, 1L, 1L);
+        final Supplier<Object> supplier = Invoker.bind(obj, method, args);
+        exec(i -> supplier, prefix, 1L, 1L, 0L);
     }
 
-    private void exec(Supplier<Object> supplier, String prefix, long loop, long per) {
+    private void exec(IntFunction<Supplier<Object>> supplier, String prefix, long loop, long per, long duration) {
+        final Worker worker = worker(supplier.apply(0), prefix, loop, per, duration, latency);
+        final Hooks trial = hook(worker, 0);
+        pace(worker, 0, 1);
+        calibrate(null);
+        Hooks.run(trial.setup(Level.TRIAL));
         start(loop, per);
-        runIt(supplier, prefix);
+        worker.run();
+        collect(new Worker[] {worker}, 1);
         stop();
+        Hooks.run(trial.tearDown(Level.TRIAL));
+        flush(prefix);
+        rethrow(worker);
     }
 
-    private void exec(Supplier<Object> supplier, String prefix, long loop, long per, int threads) {
-        final CountDownLatch latch = new CountDownLatch(threads);
-        start(loop, per);
+    private void exec(IntFunction<Supplier<Object>> supplier, String prefix, long loop, long per, long duration, int threads) {
+        execution.check();
+        // FORK_JOIN的线程数超过并行度时任务排队执行，在metric()中输出
+        final int parallel = execution.concurrency(threads);
+        final Worker[] workers = new Worker[threads];
+        final int capacity = Math.max(Statistics.CAPACITY / threads, 64);
+        Hooks trial = null;
         for (int j = 0; j < threads; j++) {
-            new Thread(new Runnable() {
-                public void run() {
-                    runIt(supplier, prefix);
-                    latch.countDown();
-                }
-            }).start();
+            workers[j] = worker(supplier.apply(j), prefix, loop, per, duration, latency, capacity);
+            final Hooks h = hook(workers[j], j);
+            trial = null == trial ? h : trial;
+            pace(workers[j], j, threads);
         }
-        try {
-            latch.await();
-        } catch (InterruptedException ignore) {
+        final WorkerPool.Round round = new WorkerPool.Round();
+        for (Worker worker : workers) {
+            worker.round = round;
         }
+        calibrate(execution);
+        Hooks.run(trial.setup(Level.TRIAL));
+        start(loop, per);
+        // 所有线程就绪后才开始计时
+        execution.execute(workers, round, this::restart);
+        collect(workers, parallel);
         stop();
+        Hooks.run(trial.tearDown(Level.TRIAL));
+        flush(prefix);
+        rethrow(workers);
     }
 
-    private void runIt(Supplier<Object> supplier, String prefix) {
-        if(null != prefix) {
-            while (loop()) {
-                supplier.get();
-                trace(prefix, System.out);
-            }
-        } else {
-            while (loop()) {
-                supplier.get();
-                trace();
-            }
+    private Worker worker(Supplier<Object> supplier, String prefix, long loop, long per, long duration, boolean latency) {
+        return worker(supplier, prefix, loop, per, duration, latency, Statistics.CAPACITY);
+    }
+
+    private Worker worker(Supplier<Object> supplier, String prefix, long loop, long per, long duration,
+            boolean latency, int capacity) {
+        final Worker worker = new Worker(supplier, prefix, loop, per, duration, latency, capacity);
+        worker.batch = batch;
+        worker.operations = operations;
+        worker.inFlight = inFlight;
+        if (duration > 0L) {
+            // 限时测试不知道执行次数，计时窗口按时间划分
+            worker.traces = Long.MAX_VALUE;
+            worker.period = Math.min(Math.max(duration / DURATION_WINDOWS, MIN_WINDOW), MAX_WINDOW);
+        }
+        return worker;
+    }
+
+    // 设定线程的Setup/TearDown，返回的hooks中的TRIAL在run()的前后执行
+    private Hooks hook(Worker worker, int index) {
+        final Hooks h = null == hooks ? new Hooks() : hooks.apply(index);
+        worker.batchSetup = h.setup(Level.BATCH);
+        worker.batchTearDown = h.tearDown(Level.BATCH);
+        worker.setup = h.setup(Level.ITERATION);
+        worker.tearDown = h.tearDown(Level.ITERATION);
+        return h;
+    }
+
+    // 停止计时后等待trace全部输出
+    private static void flush(String prefix) {
+        if (null != prefix)
+            TraceSink.shared().flush();
+    }
+
+    // 测试工具的开销，开环测试时调用间有等待，不修正
+    private void calibrate(Execution execution) {
+        if (pacing > 0.0d) {
+            harness = -1.0d;
+            startup = 0L;
+            return;
+        }
+        final Calibration calibration = Calibration.get();
+        harness = calibration.overhead(latency, batch);
+        startup = calibration.startup(execution);
+    }
+
+    // 开环测试时，每个线程负担1/threads的速率，开始时间错开，合计的调用间隔均等
+    private void pace(Worker worker, int index, int threads) {
+        if (pacing <= 0.0d)
+            return;
+        final double period = 1000000000.0d / pacing;
+        worker.interval = period * threads;
+        worker.phase = (long)(period * index);
+    }
+
+    // 测试对象抛出的异常在所有线程结束后再抛出
+    private static void rethrow(Worker... workers) {
+        for (Worker worker : workers) {
+            if (null != worker.failure)
+                throw Invoker.<RuntimeException>sneaky(worker.failure);
+        }
+    }
+
+    // 合并其他JVM(Fork)的测试结果
+    void merge(Benchmarker other) {
+        final boolean first = count() <= 0L;
+        count = Math.max(count(), 0L) + other.count() + 1L;
+        total += other.total;
+        traces = other.traces;
+        time += other.time;
+        ntime += other.ntime;
+        lost += other.lost;
+        threads = other.threads;
+        concurrency = other.concurrency;
+        execution = other.execution;
+        batch = other.batch;
+        operations = other.operations;
+        inFlight = other.inFlight;
+        rate = other.rate;
+        harness = other.harness;
+        startup += other.startup;
+        maxLag = Math.max(maxLag, other.maxLag);
+        late += other.late;
+        allocated = first ? other.allocated
+                : (allocated < 0L || other.allocated < 0L ? -1L : allocated + other.allocated);
+        cpuTime = first ? other.cpuTime
+                : (cpuTime < 0L || other.cpuTime < 0L ? -1L : cpuTime + other.cpuTime);
+        userTime = first ? other.userTime
+                : (userTime < 0L || other.userTime < 0L ? -1L : userTime + other.userTime);
+        gcCount += other.gcCount;
+        paused += other.paused;
+        gcTime += other.gcTime;
+        statistics.combine(other.statistics);
+        if (null != other.histogram) {
+            if (null == histogram)
+                histogram = new Histogram();
+            histogram.add(other.histogram);
+        }
+    }
+
+    // 每个线程各自计数，全部结束后才合并。
+    private void collect(Worker[] workers, int parallel) {
+        long n = 0L;
+        long l = 0L;
+        long a = 0L;
+        long c = 0L;
+        long u = 0L;
+        long p = 0L;
+        for (Worker worker : workers) {
+            p += worker.paused;
+            n += worker.count();
+            l += worker.lost;
+            late += worker.late;
+            maxLag = Math.max(maxLag, worker.maxLag);
+            a = a < 0L || worker.allocated < 0L ? -1L : a + worker.allocated;
+            c = c < 0L || worker.cpuTime < 0L ? -1L : c + worker.cpuTime;
+            u = u < 0L || worker.userTime < 0L ? -1L : u + worker.userTime;
+            statistics.combine(worker.statistics);
+            // 预热的Worker不记录延迟
+            if (null != histogram && null != worker.histogram)
+                histogram.add(worker.histogram);
         }
+        count = n + 1L;
+        paused = p;
+        allocated = a;
+        cpuTime = c;
+        userTime = u;
+        // 各线程的lost是并行发生的，取平均值
+        lost = l / workers.length;
+        threads = workers.length;
+        concurrency = parallel;
     }
 }
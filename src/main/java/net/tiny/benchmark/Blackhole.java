@@ -0,0 +1,95 @@
+package net.tiny.benchmark;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 防止JIT把测试对象的计算结果作为无用代码(Dead code)删除。
+ * consume()的开销很小，但JIT不能证明传入的值没有被使用。
+ * 每个线程使用各自的实例，@Benchmark的Method可以把Blackhole作为参数。
+ * <pre>
+ * &#64;Benchmark(measure=1000)
+ * public void testTask(Blackhole blackhole) {
+ *     blackhole.consume(task.norm());
+ * }
+ * </pre>
+ * 异步处理时把CompletionStage交给consume()，完成时才算一次调用结束。
+ */
+public final class Blackhole {
+    long p00, p01, p02, p03, p04, p05, p06;
+
+    // 这些值两两不同，但它们是volatile，JIT不能确定比较结果
+    private volatile boolean bool1 = false, bool2 = true;
+    private volatile byte b1 = 1, b2 = 2;
+    private volatile short s1 = 1, s2 = 2;
+    private volatile char c1 = 'A', c2 = 'B';
+    private volatile int i1 = 1, i2 = 2;
+    private volatile long l1 = 1L, l2 = 2L;
+    private volatile float f1 = 1.0f, f2 = 2.0f;
+    private volatile double d1 = 1.0d, d2 = 2.0d;
+    private volatile int mask = 1;
+    private int seed = (int) System.nanoTime();
+    private Object sink;
+    private CompletionStage<?> stage; // 本次调用中consume的CompletionStage
+
+    long p10, p11, p12, p13, p14, p15, p16;
+
+    public void consume(Object obj) {
+        final int m = mask;
+        final int r = (seed = seed * 1664525 + 1013904223);
+        // 极少数情况下才写入，避免每次都产生写操作
+        if ((r & m) == 0) {
+            sink = obj;
+            mask = (m << 1) + 1;
+        }
+    }
+
+    /**
+     * 返回void的@Benchmark Method用来测试异步处理，一次调用中consume多个时只等待最后一个。
+     */
+    public void consume(CompletionStage<?> stage) {
+        this.stage = stage;
+    }
+
+    // 取出本次调用中consume的CompletionStage
+    CompletionStage<?> stage() {
+        final CompletionStage<?> s = stage;
+        stage = null;
+        return s;
+    }
+
+    public void consume(boolean v) {
+        if ((v ^ bool1) == (v ^ bool2)) fail();
+    }
+
+    public void consume(byte v) {
+        if ((v ^ b1) == (v ^ b2)) fail();
+    }
+
+    public void consume(short v) {
+        if ((v ^ s1) == (v ^ s2)) fail();
+    }
+
+    public void consume(char v) {
+        if ((v ^ c1) == (v ^ c2)) fail();
+    }
+
+    public void consume(int v) {
+        if ((v ^ i1) == (v ^ i2)) fail();
+    }
+
+    public void consume(long v) {
+        if ((v ^ l1) == (v ^ l2)) fail();
+    }
+
+    public void consume(float v) {
+        if (v == f1 & v == f2) fail();
+    }
+
+    public void consume(double v) {
+        if (v == d1 & v == d2) fail();
+    }
+
+    private void fail() {
+        throw new IllegalStateException("Blackhole was broken : " + sink);
+    }
+}
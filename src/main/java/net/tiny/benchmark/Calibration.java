@@ -0,0 +1,194 @@
+package net.tiny.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 测试工具本身的开销，每个JVM只测定一次。
+ * <ul>
+ * <li>granularity : System.nanoTime()能区分的最小时间差(ns)</li>
+ * <li>latency : 调用一次System.nanoTime()的时间(ns)</li>
+ * <li>loop : 测试Loop中调用一次空Method的时间(ns)，包括loop()、Blackhole和计时窗口的判断</li>
+ * <li>timed : 同上，记录延迟时(每次多两次nanoTime()和Histogram的记录)</li>
+ * <li>batch大于1时，loop()和计时在batch次调用中只有一次，每次调用的开销按batch大小在第一次使用时另外测定</li>
+ * <li>startup : 每次测试的固定开销(ns)，单线程和各执行方式(2线程)分别测定，执行方式的开销在第一次使用时测定</li>
+ * </ul>
+ */
+final class Calibration {
+
+    private static final int SAMPLES = 100000;
+    private static final long LOOP = 1000000L;
+    private static final int ROUNDS = 3;
+    private static volatile Calibration instance;
+
+    final long granularity;
+    final double latency;
+    final double loop;
+    final double timed;
+    final long direct;
+    private final Supplier<Object> noop;
+    private final long[] startup = new long[Execution.values().length];
+    private final Map<Long, Double> batches = new HashMap<>(); // batch大于1时的开销，key是batch*2+timed
+
+    private Calibration() {
+        granularity = measureGranularity();
+        latency = measureLatency();
+        noop = Invoker.bind(new Noop(), Noop.METHOD);
+        loop = loop(noop, false);
+        timed = loop(noop, true);
+        direct = direct(noop);
+        Arrays.fill(startup, -1L);
+    }
+
+    static Calibration get() {
+        if (null == instance) {
+            synchronized (Calibration.class) {
+                if (null == instance) {
+                    instance = new Calibration();
+                }
+            }
+        }
+        return instance;
+    }
+
+    long granularity() {
+        return granularity;
+    }
+
+    double latency() {
+        return latency;
+    }
+
+    /**
+     * 每次调用的测试Loop开销(ns)
+     * @param timed 是否记录延迟
+     */
+    double overhead(boolean timed) {
+        return timed ? this.timed : loop;
+    }
+
+    /**
+     * batch次连续调用时，每次调用的测试Loop开销(ns)
+     */
+    double overhead(boolean timed, int batch) {
+        if (batch <= 1)
+            return overhead(timed);
+        final long key = batch * 2L + (timed ? 1L : 0L);
+        synchronized (batches) {
+            Double overhead = batches.get(key);
+            if (null == overhead) {
+                overhead = loop(noop, timed, batch);
+                batches.put(key, overhead);
+            }
+            return overhead;
+        }
+    }
+
+    /**
+     * 每次测试的固定开销(ns)
+     * @param execution 多线程的执行方式，单线程时是null
+     */
+    long startup(Execution execution) {
+        if (null == execution)
+            return direct;
+        synchronized (startup) {
+            final int i = execution.ordinal();
+            if (startup[i] < 0L)
+                startup[i] = startup(noop, execution);
+            return startup[i];
+        }
+    }
+
+    private static long measureGranularity() {
+        long min = Long.MAX_VALUE;
+        long last = System.nanoTime();
+        for (int i = 0; i < SAMPLES; i++) {
+            final long now = System.nanoTime();
+            if (now > last && now - last < min)
+                min = now - last;
+            last = now;
+        }
+        return min == Long.MAX_VALUE ? 1L : min;
+    }
+
+    private static double measureLatency() {
+        double min = Double.MAX_VALUE;
+        long sink = 0L;
+        for (int r = 0; r < ROUNDS; r++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < SAMPLES; i++) {
+                sink += System.nanoTime();
+            }
+            min = Math.min(min, (double)(System.nanoTime() - start) / SAMPLES);
+        }
+        // 防止循环被删除
+        return sink == 0L ? min + 0.0d : min;
+    }
+
+    private static double loop(Supplier<Object> noop, boolean timed) {
+        return loop(noop, timed, 1);
+    }
+
+    private static double loop(Supplier<Object> noop, boolean timed, int batch) {
+        double min = Double.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            final Worker worker = new Worker(noop, null, LOOP, LOOP * 2L, 0L, timed);
+            worker.batch = batch;
+            final long start = System.nanoTime();
+            worker.run();
+            min = Math.min(min, (double)(System.nanoTime() - start) / LOOP);
+        }
+        return min;
+    }
+
+    private static long direct(Supplier<Object> noop) {
+        long min = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            final Worker worker = new Worker(noop, null, 1L, 2L, 0L, false);
+            final long start = System.nanoTime();
+            worker.run();
+            min = Math.min(min, System.nanoTime() - start);
+        }
+        return min;
+    }
+
+    // 所有线程就绪后放行到全部结束的时间
+    private static long startup(Supplier<Object> noop, Execution execution) {
+        long min = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            final WorkerPool.Round round = new WorkerPool.Round();
+            final Worker[] workers = new Worker[2];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Worker(noop, null, 1L, 2L, 0L, false);
+                workers[i].round = round;
+            }
+            final long[] started = new long[1];
+            execution.execute(workers, round, () -> started[0] = System.nanoTime());
+            min = Math.min(min, System.nanoTime() - started[0]);
+        }
+        return min;
+    }
+
+    // 校准用的空Method
+    static final class Noop {
+        static final Method METHOD;
+        static {
+            try {
+                METHOD = Noop.class.getDeclaredMethod("noop");
+            } catch (NoSuchMethodException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+        public void noop() {
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("timer %dns/%.1fns, loop %.1fns, timed %.1fns, startup %dns",
+                granularity, latency, loop, timed, direct);
+    }
+}
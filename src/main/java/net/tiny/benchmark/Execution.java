@@ -0,0 +1,144 @@
+package net.tiny.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程压力测试的执行方式。
+ * <ul>
+ * <li>PLATFORM : 常驻的平台线程池，所有线程就绪后同时开始</li>
+ * <li>FORK_JOIN : 专用的ForkJoinPool(并行度为CPU数)，线程数多于并行度时任务排队执行，同时执行的只有并行度个</li>
+ * <li>VIRTUAL : 虚拟线程(Java 21+)，运行时检测，不支持时抛出UnsupportedOperationException</li>
+ * </ul>
+ */
+public enum Execution {
+
+    PLATFORM {
+        @Override
+        void execute(Runnable[] tasks, WorkerPool.Round round, Runnable started) {
+            WorkerPool.shared().execute(tasks, round, started);
+        }
+    },
+
+    FORK_JOIN {
+        @Override
+        void execute(Runnable[] tasks, WorkerPool.Round round, Runnable started) {
+            final ForkJoinPool pool = ForkJoin.POOL;
+            final ForkJoinTask<?>[] futures = new ForkJoinTask<?>[tasks.length];
+            // 任务数可能超过并行度，不能等待所有任务就绪
+            started.run();
+            round.started = true;
+            for (int i = 0; i < tasks.length; i++) {
+                futures[i] = pool.submit(tasks[i]);
+            }
+            for (ForkJoinTask<?> future : futures) {
+                future.join();
+            }
+        }
+    },
+
+    VIRTUAL {
+        @Override
+        void execute(Runnable[] tasks, WorkerPool.Round round, Runnable started) {
+            check();
+            final ExecutorService executor = Virtual.newExecutor();
+            final CountDownLatch ready = new CountDownLatch(tasks.length);
+            final CountDownLatch go = new CountDownLatch(1);
+            try {
+                for (Runnable task : tasks) {
+                    executor.execute(() -> {
+                        ready.countDown();
+                        try {
+                            go.await();
+                        } catch (InterruptedException e) {
+                            round.stopped = true;
+                        }
+                        task.run();
+                    });
+                }
+                ready.await();
+                started.run();
+                round.started = true;
+                go.countDown();
+                executor.shutdown();
+                while (!executor.awaitTermination(1L, TimeUnit.SECONDS)) {
+                    // 等待所有虚拟线程结束
+                }
+            } catch (InterruptedException e) {
+                round.stopped = true;
+                go.countDown();
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean supported() {
+            return Virtual.SUPPORTED;
+        }
+    };
+
+    abstract void execute(Runnable[] tasks, WorkerPool.Round round, Runnable started);
+
+    /**
+     * 当前的JVM是否支持该执行方式
+     */
+    public boolean supported() {
+        return true;
+    }
+
+    void check() {
+        if (!supported())
+            throw new UnsupportedOperationException(String.format("Execution %s is not supported by this JVM.", name()));
+    }
+
+    /**
+     * threads个任务中同时执行的个数
+     */
+    int concurrency(int threads) {
+        return this == FORK_JOIN ? Math.min(threads, ForkJoin.POOL.getParallelism()) : threads;
+    }
+
+    private static final class ForkJoin {
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    // 为了兼容Java 8，用反射取得Executors.newVirtualThreadPerTaskExecutor()
+    private static final class Virtual {
+        static final Method FACTORY = factory();
+        // Java 19/20没有--enable-preview时Method存在但不能使用，实际生成一次确认
+        static final boolean SUPPORTED = probe();
+
+        private static Method factory() {
+            try {
+                return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        private static boolean probe() {
+            if (null == FACTORY)
+                return false;
+            try {
+                ((ExecutorService) FACTORY.invoke(null)).shutdown();
+                return true;
+            } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                return false;
+            }
+        }
+
+        static ExecutorService newExecutor() {
+            try {
+                return (ExecutorService) FACTORY.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package net.tiny.benchmark;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在新的子JVM中执行压力测试，防止同一个Class中的各测试之间JIT和Heap状态互相影响。
+ * 子JVM使用同样的classpath，用无参数构造方法生成测试实例，@BeforeEach等JUnit的回调不会被执行。
+ * 测试结果(Benchmarker)通过本地Socket返回给父JVM。
+ * 子JVM先发送父JVM通过环境变量交给它的随机Token，Token不一致的连接被忽略，
+ * 反序列化时只允许测试结果的Class。子JVM超过@Benchmark(forkTimeout)还没有结束时被强制结束。
+ */
+public final class Fork {
+
+    static final String TOKEN = "TINY_BENCHMARK_FORK_TOKEN";
+    private static final int ACCEPT_TIMEOUT = 1000;
+    // 测试结果(Benchmarker)中可以出现的Class
+    private static final Set<String> ALLOWED = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            Benchmarker.class.getName(), Statistics.class.getName(), Histogram.class.getName(),
+            Execution.class.getName(), Enum.class.getName(), long[].class.getName(), double[].class.getName())));
+
+    private Fork() {}
+
+    static Benchmarker launch(Benchmark benchmark, Class<?> testClass, Method method, int threads)
+            throws IOException, InterruptedException {
+        final Benchmarker merged = new Benchmarker();
+        long warmups = 0L;
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            for (int i = 0; i < benchmark.forks(); i++) {
+                final String token = token();
+                final ProcessBuilder builder = new ProcessBuilder(command(benchmark, server.getLocalPort(), testClass, method, threads))
+                        .inheritIO();
+                builder.environment().put(TOKEN, token);
+                final Process process = builder.start();
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(benchmark.forkTimeout());
+                final Benchmarker result;
+                try {
+                    result = receive(server, process, token, deadline);
+                    // 报告后子JVM马上结束，没有结束时也强制结束
+                    process.waitFor(Math.max(deadline - System.nanoTime(), 0L), TimeUnit.NANOSECONDS);
+                } finally {
+                    process.destroyForcibly();
+                }
+                if (null == result) {
+                    throw new IllegalStateException(String.format("Fork #%d of '%s.%s' exited or timed out(%ds) before reporting.",
+                            i + 1, testClass.getName(), method.getName(), benchmark.forkTimeout()));
+                }
+                merged.merge(result);
+                warmups += result.warmups();
+            }
+        }
+        merged.warmups = warmups / benchmark.forks();
+        return merged;
+    }
+
+    private static List<String> command(Benchmark benchmark, int port, Class<?> testClass, Method method, int threads) {
+        final List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(Arrays.asList(benchmark.jvmArgs()));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Fork.class.getName());
+        command.add(String.valueOf(port));
+        command.add(testClass.getName());
+        command.add(method.getName());
+        command.add(String.valueOf(threads));
+        return command;
+    }
+
+    // 每个子JVM一个的随机Token
+    private static String token() {
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static Benchmarker receive(ServerSocket server, Process process, String token, long deadline) throws IOException {
+        long remaining;
+        while ((remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0L) {
+            server.setSoTimeout((int)Math.min(remaining, ACCEPT_TIMEOUT));
+            try (Socket socket = server.accept()) {
+                socket.setSoTimeout(ACCEPT_TIMEOUT);
+                final InputStream input = socket.getInputStream();
+                if (!handshake(input, token))
+                    continue; // 不是子JVM的连接
+                // 读取测试结果也不超过期限
+                socket.setSoTimeout((int)Math.max(Math.min(
+                        TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), Integer.MAX_VALUE), 1L));
+                try (ObjectInputStream in = new ResultInputStream(input)) {
+                    return (Benchmarker) in.readObject();
+                }
+            } catch (SocketTimeoutException e) {
+                if (!process.isAlive())
+                    return null;
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    private static boolean handshake(InputStream input, String token) {
+        try {
+            final String received = new DataInputStream(input).readUTF();
+            return MessageDigest.isEqual(token.getBytes(StandardCharsets.US_ASCII),
+                    received.getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // 只允许反序列化测试结果的Class
+    static final class ResultInputStream extends ObjectInputStream {
+        ResultInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!ALLOWED.contains(desc.getName()))
+                throw new InvalidClassException(desc.getName(), "Not allowed in a fork result");
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("Proxy", "Not allowed in a fork result");
+        }
+    }
+
+    /**
+     * 子JVM的入口
+     * @param args port, test class name, test method name, threads
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: java " + Fork.class.getName() + " <port> <class> <method> <threads>");
+            System.exit(1);
+        }
+        final int port = Integer.parseInt(args[0]);
+        final Class<?> testClass = Class.forName(args[1]);
+        final Method method = Arrays.stream(testClass.getDeclaredMethods())
+                .filter(m -> m.getName().equals(args[2]) && m.isAnnotationPresent(Benchmark.class))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(
+                        String.format("Not found @Benchmark method '%s.%s'.", args[1], args[2])));
+        final Benchmark benchmark = method.getAnnotation(Benchmark.class);
+        final Constructor<?> constructor = testClass.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        method.setAccessible(true);
+
+        final Benchmarker launcher = new Benchmarker();
+        // 子JVM中只有一个测试，SHARED范围的状态对象和BENCHMARK相同
+        final States states = new States(null);
+        BenchmarkExtension.target(launcher, constructor.newInstance(), method, null, states);
+        BenchmarkExtension.warmup(benchmark, launcher);
+        BenchmarkExtension.measure(benchmark, launcher, Integer.parseInt(args[3]));
+        states.close();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            final DataOutputStream data = new DataOutputStream(socket.getOutputStream());
+            data.writeUTF(String.valueOf(System.getenv(TOKEN)));
+            final ObjectOutputStream out = new ObjectOutputStream(data);
+            out.writeObject(launcher);
+            out.flush();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,115 @@
+package net.tiny.benchmark;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * 固定内存的对数分桶直方图(HdrHistogram方式)，用于记录每次调用的延迟(ns)。
+ * 每个2的幂区间分为64个线性子桶，相对误差小于1/64。
+ * record()不分配对象，可以在测试Loop中调用。
+ */
+public class Histogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;       //128
+    private static final int HALF_COUNT = SUB_COUNT >> 1;     //64
+    private static final int LENGTH = (64 - SUB_BITS + 1) * HALF_COUNT + HALF_COUNT;
+
+    private final long[] counts = new long[LENGTH];
+    private long total = 0L;
+    private long min = Long.MAX_VALUE;
+    private long max = 0L;
+    private double sum = 0.0d;
+
+    public void record(long value) {
+        if (value < 0L)
+            value = 0L;
+        counts[index(value)]++;
+        total++;
+        sum += value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long min() {
+        return total == 0L ? 0L : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return total == 0L ? 0.0d : sum / total;
+    }
+
+    /**
+     * @param percent 0.0 ~ 100.0
+     * @return 该百分位所在桶的上限值，不超过记录的最大值
+     */
+    public long percentile(double percent) {
+        if (total == 0L)
+            return 0L;
+        final double p = Math.min(Math.max(percent, 0.0d), 100.0d);
+        final long rank = Math.max(1L, (long)Math.ceil(p / 100.0d * total));
+        long n = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            n += counts[i];
+            if (n >= rank) {
+                return Math.min(Math.max(highest(i), min), max);
+            }
+        }
+        return max;
+    }
+
+    public void add(Histogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0L);
+        total = 0L;
+        min = Long.MAX_VALUE;
+        max = 0L;
+        sum = 0.0d;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50:%.3fus p90:%.3fus p99:%.3fus p99.9:%.3fus max:%.3fus",
+                micros(percentile(50.0d)),
+                micros(percentile(90.0d)),
+                micros(percentile(99.0d)),
+                micros(percentile(99.9d)),
+                micros(max()));
+    }
+
+    static int index(long value) {
+        final int bucket = Math.max(0, (63 - Long.numberOfLeadingZeros(value)) - (SUB_BITS - 1));
+        return (bucket * HALF_COUNT) + (int)(value >>> bucket);
+    }
+
+    static long highest(int index) {
+        if (index < SUB_COUNT)
+            return index;
+        final int bucket = (index >> (SUB_BITS - 1)) - 1;
+        final long sub = (index & (HALF_COUNT - 1)) + HALF_COUNT;
+        return ((sub + 1L) << bucket) - 1L;
+    }
+
+    private static double micros(long nano) {
+        return (double)nano / 1000.0d;
+    }
+}
@@ -0,0 +1,48 @@
+package net.tiny.benchmark;
+
+/**
+ * 一个测试线程的Setup/TearDown。
+ * 同一Level的Setup按追加的顺序执行，TearDown按反顺序执行。
+ */
+final class Hooks {
+
+    private final Runnable[] setups = new Runnable[Level.values().length];
+    private final Runnable[] tearDowns = new Runnable[Level.values().length];
+
+    Hooks setup(Level level, Runnable hook) {
+        setups[level.ordinal()] = chain(setups[level.ordinal()], hook);
+        return this;
+    }
+
+    Hooks tearDown(Level level, Runnable hook) {
+        tearDowns[level.ordinal()] = chain(hook, tearDowns[level.ordinal()]);
+        return this;
+    }
+
+    /**
+     * @return 没有时是null
+     */
+    Runnable setup(Level level) {
+        return setups[level.ordinal()];
+    }
+
+    Runnable tearDown(Level level) {
+        return tearDowns[level.ordinal()];
+    }
+
+    static void run(Runnable hook) {
+        if (null != hook)
+            hook.run();
+    }
+
+    private static Runnable chain(Runnable first, Runnable second) {
+        if (null == first)
+            return second;
+        if (null == second)
+            return first;
+        return () -> {
+            first.run();
+            second.run();
+        };
+    }
+}
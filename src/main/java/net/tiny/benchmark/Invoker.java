@@ -0,0 +1,222 @@
+package net.tiny.benchmark;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 不使用反射调用测试对象的Method。
+ * 优先用LambdaMetafactory为每个Method生成专用的Supplier类，调用时没有反射的参数检查和装箱。
+ * 但测试Loop(Worker)和包装用的Supplier是同一个JVM中所有测试共用的，测试过几个不同的对象后调用点成为多态的，
+ * JIT不能内联测试对象。需要排除其他测试的影响时用@Benchmark(forks=...)在各自的JVM中测试。
+ * 不能生成时使用绑定了实例的MethodHandle。
+ * 基本类型的返回值不装箱，直接交给Blackhole，Supplier返回null。
+ * 测试对象抛出的异常不会被包装，直接抛出。
+ */
+final class Invoker {
+
+    private Invoker() {}
+
+    static Supplier<Object> bind(Object obj, Method method, Object... args) {
+        return factory(obj, method).apply(args);
+    }
+
+    /**
+     * 生成测试对象的工厂，Lambda类只生成一次，每个线程可以绑定不同的参数。
+     * 工厂的参数是绑定到Method参数的值，个数必须和参数相同。
+     */
+    static Function<Object[], Supplier<Object>> factory(Object obj, Method method) {
+        method.setAccessible(true);
+        final boolean isStatic = Modifier.isStatic(method.getModifiers());
+        Function<Object[], Supplier<Object>> factory;
+        try {
+            factory = metafactory(obj, method, isStatic);
+        } catch (Throwable e) {
+            // 不能生成Lambda时使用MethodHandle
+            factory = handles(obj, method, isStatic);
+        }
+        final Function<Object[], Supplier<Object>> delegate = factory;
+        return args -> {
+            if (method.getParameterCount() != args.length) {
+                throw new IllegalArgumentException(String.format("'%s' needs %d arguments, but %d given.",
+                        method, method.getParameterCount(), args.length));
+            }
+            return delegate.apply(args);
+        };
+    }
+
+    private static Function<Object[], Supplier<Object>> handles(Object obj, Method method, boolean isStatic) {
+        final MethodHandle unreflected;
+        try {
+            unreflected = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(String.format("Can not access '%s'.", method), e);
+        }
+        final MethodHandle handle = isStatic ? unreflected : unreflected.bindTo(obj);
+        final Class<?> type = method.getReturnType();
+        final MethodHandle consume;
+        try {
+            consume = type.isPrimitive() && !void.class.equals(type)
+                    ? MethodHandles.lookup().findVirtual(Blackhole.class, "consume", MethodType.methodType(void.class, type))
+                    : null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return args -> {
+            MethodHandle bound = MethodHandles.insertArguments(handle, 0, args);
+            if (null != consume) {
+                // 基本类型的返回值不装箱，void转为Object时返回null
+                bound = MethodHandles.filterReturnValue(bound, consume.bindTo(new Blackhole()));
+            }
+            final MethodHandle exact = bound.asType(MethodType.methodType(Object.class));
+            return new Supplier<Object>() {
+                @Override
+                public Object get() {
+                    try {
+                        return (Object) exact.invokeExact();
+                    } catch (Throwable e) {
+                        throw Invoker.<RuntimeException>sneaky(e);
+                    }
+                }
+            };
+        };
+    }
+
+    private static Function<Object[], Supplier<Object>> metafactory(Object obj, Method method, boolean isStatic) throws Throwable {
+        final Class<?> owner = method.getDeclaringClass();
+        final Lookup lookup = privateLookup(owner);
+        final MethodHandle impl = lookup.unreflect(method);
+        // 实例和参数作为Lambda捕获的值
+        MethodType factoryType = MethodType.methodType(Object.class, method.getParameterTypes());
+        if (!isStatic) {
+            factoryType = factoryType.insertParameterTypes(0, owner);
+        }
+        if (void.class.equals(method.getReturnType())) {
+            final MethodHandle site = LambdaMetafactory.metafactory(lookup, "run",
+                    factoryType.changeReturnType(Runnable.class),
+                    MethodType.methodType(void.class), impl, MethodType.methodType(void.class)).getTarget();
+            return args -> {
+                final Runnable runnable = (Runnable) create(site, obj, isStatic, args);
+                return new Supplier<Object>() {
+                    @Override
+                    public Object get() {
+                        runnable.run();
+                        return null;
+                    }
+                };
+            };
+        }
+        if (method.getReturnType().isPrimitive()) {
+            return primitive(lookup, impl, factoryType, obj, isStatic, method.getReturnType());
+        }
+        final MethodHandle site = LambdaMetafactory.metafactory(lookup, "get",
+                factoryType.changeReturnType(Supplier.class),
+                MethodType.methodType(Object.class), impl, MethodType.methodType(method.getReturnType())).getTarget();
+        return args -> {
+            @SuppressWarnings("unchecked")
+            final Supplier<Object> supplier = (Supplier<Object>) create(site, obj, isStatic, args);
+            return supplier;
+        };
+    }
+
+    /**
+     * 基本类型的返回值用对应的函数接口接收，不装箱，直接交给Blackhole。
+     * byte/short/char扩展为int，float扩展为double。
+     */
+    private static Function<Object[], Supplier<Object>> primitive(Lookup lookup, MethodHandle impl, MethodType factoryType,
+            Object obj, boolean isStatic, Class<?> type) throws Throwable {
+        if (long.class.equals(type)) {
+            final MethodHandle site = primitive(lookup, impl, factoryType, LongSupplier.class, "getAsLong", long.class);
+            return args -> {
+                final LongSupplier target = (LongSupplier) create(site, obj, isStatic, args);
+                final Blackhole blackhole = new Blackhole();
+                return () -> {
+                    blackhole.consume(target.getAsLong());
+                    return null;
+                };
+            };
+        }
+        if (double.class.equals(type) || float.class.equals(type)) {
+            final MethodHandle site = primitive(lookup, impl, factoryType, DoubleSupplier.class, "getAsDouble", double.class);
+            return args -> {
+                final DoubleSupplier target = (DoubleSupplier) create(site, obj, isStatic, args);
+                final Blackhole blackhole = new Blackhole();
+                return () -> {
+                    blackhole.consume(target.getAsDouble());
+                    return null;
+                };
+            };
+        }
+        if (boolean.class.equals(type)) {
+            final MethodHandle site = primitive(lookup, impl, factoryType, BooleanSupplier.class, "getAsBoolean", boolean.class);
+            return args -> {
+                final BooleanSupplier target = (BooleanSupplier) create(site, obj, isStatic, args);
+                final Blackhole blackhole = new Blackhole();
+                return () -> {
+                    blackhole.consume(target.getAsBoolean());
+                    return null;
+                };
+            };
+        }
+        final MethodHandle site = primitive(lookup, impl, factoryType, IntSupplier.class, "getAsInt", int.class);
+        return args -> {
+            final IntSupplier target = (IntSupplier) create(site, obj, isStatic, args);
+            final Blackhole blackhole = new Blackhole();
+            return () -> {
+                blackhole.consume(target.getAsInt());
+                return null;
+            };
+        };
+    }
+
+    private static MethodHandle primitive(Lookup lookup, MethodHandle impl, MethodType factoryType,
+            Class<?> face, String name, Class<?> type) throws Throwable {
+        return LambdaMetafactory.metafactory(lookup, name, factoryType.changeReturnType(face),
+                MethodType.methodType(type), impl, MethodType.methodType(type)).getTarget();
+    }
+
+    private static Object create(MethodHandle site, Object obj, boolean isStatic, Object[] args) {
+        final List<Object> captured = new ArrayList<>(Arrays.asList(args));
+        if (!isStatic) {
+            captured.add(0, obj);
+        }
+        try {
+            return site.invokeWithArguments(captured);
+        } catch (Throwable e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    // LambdaMetafactory需要对测试Class有private权限的Lookup
+    private static Lookup privateLookup(Class<?> owner) throws ReflectiveOperationException {
+        try {
+            // Java 9+
+            final Method method = MethodHandles.class.getMethod("privateLookupIn", Class.class, Lookup.class);
+            return (Lookup) method.invoke(null, owner, MethodHandles.lookup());
+        } catch (NoSuchMethodException e) {
+            // Java 8
+            final Constructor<Lookup> constructor = Lookup.class.getDeclaredConstructor(Class.class, int.class);
+            constructor.setAccessible(true);
+            return constructor.newInstance(owner, -1);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T extends Throwable> T sneaky(Throwable e) throws T {
+        throw (T) e;
+    }
+}
@@ -0,0 +1,187 @@
+package net.tiny.benchmark;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * 一个测试Class中所有压力测试结果的排行榜，按吞吐量从高到低排列。
+ * 保存在测试Class的Store中，Class的测试全部结束时作为一个报告输出。
+ * 误差是计时窗口吞吐量平均值的95%置信区间(Student t分布)，
+ * speedup是对@Benchmark(baseline=true)的Method(同一线程数和参数)的吞吐量比。
+ * <pre>
+ * #  benchmark       threads  ops/s       error  ns/op  p99  speedup
+ * 1  testBuilder           1  ...
+ * 2  testConcat            1  ...       +-1.2%  ...    -    1.00x(baseline)
+ * </pre>
+ */
+final class Leaderboard implements ExtensionContext.Store.CloseableResource {
+
+    private static final double CONFIDENCE = 0.975d; // 双侧95%
+
+    private final ExtensionContext context;
+    private final List<Entry> entries = new ArrayList<>();
+
+    Leaderboard(ExtensionContext context) {
+        this.context = context;
+    }
+
+    synchronized void add(String method, String params, boolean baseline, Benchmarker launcher) {
+        final Histogram histogram = launcher.histogram();
+        entries.add(new Entry(method, null == params ? "" : params, launcher.threads, baseline,
+                launcher.throughput(), error(launcher.statistics), launcher.nanos(),
+                null != histogram && histogram.count() > 0L ? histogram.percentile(99.0d) : -1L));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 按吞吐量排列的结果
+     */
+    synchronized List<Entry> ranking() {
+        final List<Entry> ranking = new ArrayList<>(entries);
+        ranking.sort(Comparator.comparingDouble((Entry e) -> e.throughput).reversed());
+        return ranking;
+    }
+
+    /**
+     * 对基准Method的吞吐量比，没有基准时是NaN
+     */
+    synchronized double speedup(Entry entry) {
+        final Entry base = baseline(entry);
+        if (null == base || base.throughput <= 0.0d)
+            return Double.NaN;
+        return entry.throughput / base.throughput;
+    }
+
+    // 吞吐量比的相对误差，两者的相对误差的平方和
+    private double speedupError(Entry entry) {
+        final Entry base = baseline(entry);
+        if (null == base || base == entry)
+            return 0.0d;
+        return Math.sqrt(entry.error * entry.error + base.error * base.error);
+    }
+
+    // 优先选择线程数和参数都相同的基准，其次是线程数相同的
+    private Entry baseline(Entry entry) {
+        Entry found = null;
+        for (Entry e : entries) {
+            if (!e.baseline || e.threads != entry.threads)
+                continue;
+            if (e.params.equals(entry.params))
+                return e;
+            if (null == found)
+                found = e;
+        }
+        return found;
+    }
+
+    /**
+     * 计时窗口吞吐量平均值的95%置信区间的相对宽度，数据不足时是NaN
+     */
+    static double error(Statistics statistics) {
+        final long n = statistics.count();
+        if (n < 2L || statistics.average() <= 0.0d)
+            return Double.NaN;
+        final double se = Math.sqrt(statistics.variance() / (n - 1L)); // 不偏分散/n
+        return quantile(n - 1L) * se / statistics.average();
+    }
+
+    // Student t分布的上侧2.5%点，用二分法求累积分布函数的逆
+    static double quantile(double df) {
+        double low = 0.0d;
+        double high = 1000.0d;
+        for (int i = 0; i < 64; i++) {
+            final double mid = (low + high) / 2.0d;
+            if (Baseline.studentCdf(mid, df) < CONFIDENCE) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return (low + high) / 2.0d;
+    }
+
+    @Override
+    public String toString() {
+        final List<String[]> table = new ArrayList<>();
+        table.add(new String[] {"#", "benchmark", "threads", "ops/s", "error", "ns/op", "p99", "speedup"});
+        synchronized (this) {
+            int rank = 0;
+            for (Entry entry : ranking()) {
+                final double speedup = speedup(entry);
+                final String ratio;
+                if (Double.isNaN(speedup)) {
+                    ratio = "-";
+                } else if (entry.baseline && baseline(entry) == entry) {
+                    ratio = "1.00x(baseline)";
+                } else {
+                    final double error = speedupError(entry);
+                    ratio = Double.isNaN(error) ? String.format("%.2fx", speedup)
+                            : String.format("%.2fx+-%.2f", speedup, speedup * error);
+                }
+                table.add(new String[] {
+                    String.valueOf(++rank),
+                    entry.params.isEmpty() ? entry.method : entry.method + "[" + entry.params + "]",
+                    String.valueOf(entry.threads),
+                    String.format("%.3f", entry.throughput),
+                    Double.isNaN(entry.error) ? "-" : String.format("+-%.1f%%", entry.error * 100.0d),
+                    String.format("%.1f", entry.nanos),
+                    entry.p99 < 0L ? "-" : String.format("%.3fus", entry.p99 / 1000.0d),
+                    ratio
+                });
+            }
+        }
+        final int[] width = new int[table.get(0).length];
+        for (String[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                width[i] = Math.max(width[i], row[i].length());
+            }
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (String[] row : table) {
+            sb.append(System.lineSeparator());
+            for (int i = 0; i < row.length; i++) {
+                // 名字左对齐，数值右对齐
+                final String format = i == 1 ? "  %-" + width[i] + "s" : (i == 0 ? "%" : "  %") + width[i] + "s";
+                sb.append(String.format(format, row[i]));
+            }
+        }
+        return sb.toString();
+    }
+
+    // 只有一个结果时没有比较的意义
+    @Override
+    public void close() {
+        if (size() > 1) {
+            context.publishReportEntry("Leaderboard", toString());
+        }
+    }
+
+    static final class Entry {
+        final String method;
+        final String params;
+        final int threads;
+        final boolean baseline;
+        final double throughput; // ops/s
+        final double error;      // 相对误差
+        final double nanos;      // ns/op
+        final long p99;          // ns，没有记录延迟时是-1
+
+        Entry(String method, String params, int threads, boolean baseline,
+                double throughput, double error, double nanos, long p99) {
+            this.method = method;
+            this.params = params;
+            this.threads = threads;
+            this.baseline = baseline;
+            this.throughput = throughput;
+            this.error = error;
+            this.nanos = nanos;
+            this.p99 = p99;
+        }
+    }
+}
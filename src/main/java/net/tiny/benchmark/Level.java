@@ -0,0 +1,16 @@
+package net.tiny.benchmark;
+
+/**
+ * Setup/TearDown的执行时机。BATCH和ITERATION在测试中执行，时间不计入测试时间和延迟，另外统计。
+ * <ul>
+ * <li>TRIAL : 状态对象创建后和范围结束时，Benchmarker.setup()时是每次run()的前后</li>
+ * <li>BATCH : 每batch次(@Benchmark的batchSize)调用的前后</li>
+ * <li>ITERATION : 每次调用的前后，例如排序测试前打乱数组</li>
+ * </ul>
+ * BATCH和ITERATION在各测试线程中执行，BENCHMARK和SHARED范围的状态对象需要自己同步。
+ */
+public enum Level {
+    TRIAL,
+    BATCH,
+    ITERATION
+}
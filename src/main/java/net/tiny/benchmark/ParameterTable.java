@@ -0,0 +1,75 @@
+package net.tiny.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * 参数化测试中各参数的吞吐量表。
+ * 保存在测试模板(@ParameterizedTest)的Store中，所有参数执行完毕时作为一个报告输出。
+ * <pre>
+ * params   threads  ops/s  ms/per  p99
+ * 10             1  ...
+ * 100            1  ...
+ * </pre>
+ */
+final class ParameterTable implements ExtensionContext.Store.CloseableResource {
+
+    private final ExtensionContext context;
+    private final List<String[]> rows = new ArrayList<>();
+
+    ParameterTable(ExtensionContext context) {
+        this.context = context;
+    }
+
+    synchronized void add(String params, Benchmarker launcher) {
+        final Histogram histogram = launcher.histogram();
+        final double throughput = launcher.throughput();
+        rows.add(new String[] {
+            params,
+            String.valueOf(launcher.threads),
+            String.format("%.3f", throughput),
+            throughput > 0.0d ? String.format("%.6f", launcher.nanos() / 1000000.0d) : "-",
+            null != histogram && histogram.count() > 0L
+                ? String.format("%.3fus", histogram.percentile(99.0d) / 1000.0d) : "-"
+        });
+    }
+
+    synchronized int size() {
+        return rows.size();
+    }
+
+    @Override
+    public String toString() {
+        final List<String[]> table = new ArrayList<>();
+        table.add(new String[] {"params", "threads", "ops/s", "ms/per", "p99"});
+        synchronized (this) {
+            table.addAll(rows);
+        }
+        final int[] width = new int[5];
+        for (String[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                width[i] = Math.max(width[i], row[i].length());
+            }
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (String[] row : table) {
+            sb.append(System.lineSeparator());
+            for (int i = 0; i < row.length; i++) {
+                // 参数左对齐，数值右对齐
+                final String format = i == 0 ? "%-" + width[i] + "s" : "  %" + width[i] + "s";
+                sb.append(String.format(format, row[i]));
+            }
+        }
+        return sb.toString();
+    }
+
+    // 模板的所有参数执行结束时输出
+    @Override
+    public void close() {
+        if (size() > 0) {
+            context.publishReportEntry("Parameters", toString());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package net.tiny.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * 通过JMX取得测试中的内存分配、CPU时间和GC信息。
+ * 线程的内存分配量需要HotSpot的com.sun.management.ThreadMXBean，不支持时返回-1。
+ */
+final class Probe {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final List<GarbageCollectorMXBean> COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+    private static final boolean ALLOCATION = allocation();
+    private static final boolean CPU = cpu();
+
+    private Probe() {}
+
+    private static boolean allocation() {
+        try {
+            if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+                return false;
+            final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREADS;
+            if (!bean.isThreadAllocatedMemorySupported())
+                return false;
+            if (!bean.isThreadAllocatedMemoryEnabled())
+                bean.setThreadAllocatedMemoryEnabled(true);
+            return true;
+        } catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    private static boolean cpu() {
+        try {
+            if (!THREADS.isCurrentThreadCpuTimeSupported())
+                return false;
+            if (!THREADS.isThreadCpuTimeEnabled())
+                THREADS.setThreadCpuTimeEnabled(true);
+            return true;
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 当前线程到现在为止使用的CPU时间(ns)，不支持时(包括虚拟线程)是-1
+     */
+    static long cpuTime() {
+        if (!CPU)
+            return -1L;
+        try {
+            return THREADS.getCurrentThreadCpuTime();
+        } catch (UnsupportedOperationException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * 当前线程到现在为止在用户模式下使用的CPU时间(ns)，不支持时是-1
+     */
+    static long userTime() {
+        if (!CPU)
+            return -1L;
+        try {
+            return THREADS.getCurrentThreadUserTime();
+        } catch (UnsupportedOperationException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * 当前线程到现在为止分配的内存(byte)，不支持时(包括虚拟线程)是-1
+     */
+    static long allocatedBytes() {
+        if (!ALLOCATION)
+            return -1L;
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * 所有GC到现在为止的执行次数
+     */
+    static long gcCount() {
+        long count = 0L;
+        for (GarbageCollectorMXBean collector : COLLECTORS) {
+            count += Math.max(collector.getCollectionCount(), 0L);
+        }
+        return count;
+    }
+
+    /**
+     * 所有GC到现在为止的累计时间(ms)
+     */
+    static long gcTime() {
+        long time = 0L;
+        for (GarbageCollectorMXBean collector : COLLECTORS) {
+            time += Math.max(collector.getCollectionTime(), 0L);
+        }
+        return time;
+    }
+}
@@ -0,0 +1,250 @@
+package net.tiny.benchmark;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 一次压力测试的结果，用于输出JSON和CSV。
+ * 吞吐量的单位是ops/s，延迟的单位是ns，没有记录延迟时是-1。
+ * correctedOpsPerSecond是减去测试工具开销后的吞吐量，noisy是测试对象的开销不超过测试工具开销的标志。
+ * paused是Setup/TearDown(不计入elapsed)的合计时间(ns)。
+ * threadMean/threadMin/threadMax/threadSdev是每个线程的计时窗口吞吐量的统计，不是合计，
+ * 多线程时合计的吞吐量是opsPerSecond(由总次数和测试时间计算)。
+ * CPU时间是每个操作的ns，内存分配是每个操作的byte数，GC时间是ms。
+ */
+public final class Result implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // 每个结果的项目
+    static final String[] MEASURES = {
+        "class", "method", "params", "threads", "forks", "batch", "operations", "iterations", "elapsed", "paused",
+        "opsPerSecond", "correctedOpsPerSecond", "noisy", "threadMean", "threadMin", "threadMax", "threadSdev",
+        "p50", "p90", "p99", "p999", "latencyMax",
+        "cpuPerOp", "userPerOp", "utilization", "allocPerOp", "gcCount", "gcTime", "rate", "keptUp"
+    };
+    // 执行环境的项目，JSON只在文件的开头输出一次
+    static final String[] ENVIRONMENT = {"java", "vm", "os", "cpus"};
+    static final String[] COLUMNS = columns();
+
+    final String className;
+    final String method;
+    final String params;
+    final int threads;
+    final int forks;
+    final int batch;
+    final int operations;
+    final long iterations;
+    final long elapsed;
+    final long paused;
+    final double opsPerSecond;
+    final double correctedOpsPerSecond;
+    final boolean noisy;
+    final double threadMean;
+    final double threadMin;
+    final double threadMax;
+    final double threadSdev;
+    final long p50;
+    final long p90;
+    final long p99;
+    final long p999;
+    final long latencyMax;
+    final double cpuPerOp;
+    final double userPerOp;
+    final double utilization;
+    final double allocPerOp;
+    final long gcCount;
+    final long gcTime;
+    final double rate;
+    final boolean keptUp;
+
+    /**
+     * @param params 参数化测试的参数，没有时是空字符串
+     * @param forks 子JVM的个数，0是在当前JVM中执行
+     */
+    public Result(String className, String method, String params, int forks, Benchmarker launcher) {
+        this.className = className;
+        this.method = method;
+        this.params = null == params ? "" : params;
+        this.threads = launcher.threads;
+        this.forks = forks;
+        this.batch = launcher.batch;
+        this.operations = launcher.operations;
+        this.iterations = Math.max(launcher.count(), 0L);
+        this.elapsed = launcher.ntime;
+        this.paused = launcher.paused;
+        this.opsPerSecond = launcher.throughput();
+        this.correctedOpsPerSecond = launcher.correctedThroughput();
+        this.noisy = launcher.noisy();
+        // 各线程计时窗口的吞吐量(K/s)换算成ops/s
+        final Statistics statistics = launcher.statistics;
+        final boolean empty = statistics.count() == 0L;
+        this.threadMean = empty ? 0.0d : statistics.mean() * 1000.0d;
+        this.threadMin = empty ? 0.0d : statistics.min() * 1000.0d;
+        this.threadMax = empty ? 0.0d : statistics.max() * 1000.0d;
+        this.threadSdev = empty ? 0.0d : statistics.sdev() * 1000.0d;
+        final Histogram histogram = launcher.histogram;
+        final boolean latency = null != histogram && histogram.count() > 0L;
+        this.p50 = latency ? histogram.percentile(50.0d) : -1L;
+        this.p90 = latency ? histogram.percentile(90.0d) : -1L;
+        this.p99 = latency ? histogram.percentile(99.0d) : -1L;
+        this.p999 = latency ? histogram.percentile(99.9d) : -1L;
+        this.latencyMax = latency ? histogram.max() : -1L;
+        this.cpuPerOp = launcher.cpu();
+        this.userPerOp = launcher.user();
+        this.utilization = launcher.utilization();
+        this.allocPerOp = launcher.allocation();
+        this.gcCount = launcher.gcCount;
+        this.gcTime = launcher.gcTime;
+        this.rate = launcher.rate;
+        this.keptUp = launcher.keptUp();
+    }
+
+    public String className() {
+        return className;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public String params() {
+        return params;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    public long iterations() {
+        return iterations;
+    }
+
+    public double opsPerSecond() {
+        return opsPerSecond;
+    }
+
+    public double correctedOpsPerSecond() {
+        return correctedOpsPerSecond;
+    }
+
+    public boolean noisy() {
+        return noisy;
+    }
+
+    private static String[] columns() {
+        final String[] columns = new String[MEASURES.length + ENVIRONMENT.length];
+        System.arraycopy(MEASURES, 0, columns, 0, MEASURES.length);
+        System.arraycopy(ENVIRONMENT, 0, columns, MEASURES.length, ENVIRONMENT.length);
+        return columns;
+    }
+
+    /**
+     * 执行环境，每个结果文件只输出一次(CSV是每行)
+     */
+    public static Map<String, String> environment() {
+        final String[] values = {
+            System.getProperty("java.version"),
+            System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"),
+            System.getProperty("os.name") + " " + System.getProperty("os.arch"),
+            String.valueOf(Runtime.getRuntime().availableProcessors())
+        };
+        final Map<String, String> env = new LinkedHashMap<>();
+        for (int i = 0; i < ENVIRONMENT.length; i++) {
+            env.put(ENVIRONMENT[i], values[i]);
+        }
+        return env;
+    }
+
+    public String toJson() {
+        final StringBuilder sb = new StringBuilder("{");
+        final Object[] values = values();
+        // 环境信息在文件的开头输出
+        for (int i = 0; i < MEASURES.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(json(COLUMNS[i])).append(':').append(json(values[i]));
+        }
+        return sb.append('}').toString();
+    }
+
+    public String toCsv() {
+        final StringBuilder sb = new StringBuilder();
+        final Object[] values = values();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append(csv(values[i]));
+        }
+        return sb.toString();
+    }
+
+    public static String csvHeader() {
+        return String.join(",", COLUMNS);
+    }
+
+    private Object[] values() {
+        final Object[] values = {
+            className, method, params, threads, forks, batch, operations, iterations, elapsed, paused,
+            opsPerSecond, correctedOpsPerSecond, noisy, threadMean, threadMin, threadMax, threadSdev,
+            p50, p90, p99, p999, latencyMax,
+            cpuPerOp, userPerOp, utilization, allocPerOp, gcCount, gcTime, rate, keptUp
+        };
+        final Object[] row = new Object[COLUMNS.length];
+        System.arraycopy(values, 0, row, 0, values.length);
+        int i = values.length;
+        for (String value : environment().values()) {
+            row[i++] = value;
+        }
+        return row;
+    }
+
+    static String json(Object value) {
+        if (value instanceof Double) {
+            final double d = (Double) value;
+            return Double.isNaN(d) || Double.isInfinite(d) ? "null" : String.format(Locale.ROOT, "%.3f", d);
+        }
+        if (value instanceof Number || value instanceof Boolean)
+            return String.valueOf(value);
+        final String s = String.valueOf(value);
+        final StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static String csv(Object value) {
+        if (value instanceof Double)
+            return String.format(Locale.ROOT, "%.3f", (Double) value);
+        final String s = String.valueOf(value);
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0)
+            return s;
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+}
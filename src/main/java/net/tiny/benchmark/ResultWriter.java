@@ -0,0 +1,78 @@
+package net.tiny.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * 把一个测试Class的所有结果写到 &lt;dir&gt;/&lt;class&gt;.json 和 &lt;dir&gt;/&lt;class&gt;.csv。
+ * 每个结果写完后立即flush，不在内存中保留。
+ * <pre>
+ * {"environment":{...},"results":[
+ * {...},
+ * {...}
+ * ]}
+ * </pre>
+ */
+final class ResultWriter implements Closeable, ExtensionContext.Store.CloseableResource {
+
+    /** 输出目录的配置参数名，可以用系统属性或junit-platform.properties指定 */
+    static final String DIRECTORY = "benchmark.report.dir";
+
+    private final BufferedWriter json;
+    private final BufferedWriter csv;
+    private int count = 0;
+
+    ResultWriter(Path dir, String className) {
+        try {
+            Files.createDirectories(dir);
+            json = Files.newBufferedWriter(dir.resolve(className + ".json"), StandardCharsets.UTF_8);
+            csv = Files.newBufferedWriter(dir.resolve(className + ".csv"), StandardCharsets.UTF_8);
+            json.write("{\"environment\":{");
+            int i = 0;
+            for (Map.Entry<String, String> entry : Result.environment().entrySet()) {
+                if (i++ > 0)
+                    json.write(',');
+                json.write(Result.json(entry.getKey()) + ":" + Result.json(entry.getValue()));
+            }
+            json.write("},\"results\":[");
+            json.flush();
+            csv.write(Result.csvHeader());
+            csv.newLine();
+            csv.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void write(Result result) {
+        try {
+            json.write(count++ > 0 ? ",\n" : "\n");
+            json.write(result.toJson());
+            json.flush();
+            csv.write(result.toCsv());
+            csv.newLine();
+            csv.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            json.write("\n]}");
+            json.newLine();
+        } finally {
+            json.close();
+            csv.close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package net.tiny.benchmark;
+
+/**
+ * 不同线程数的吞吐量和Universal Scalability Law(USL)的拟合结果。
+ * <pre>
+ * X(N) = λN / (1 + σ(N-1) + κN(N-1))
+ * </pre>
+ * σ是竞争(Contention)系数，κ是一致性(Coherency)系数，κ=0时就是Amdahl定律。
+ * λ是单线程的吞吐量，没有测定1线程时，假设最少线程数之前是线性扩展的。
+ */
+public class Scalability {
+
+    private final int[] levels;
+    private final double[] throughput;
+    private final double lambda;
+    private double sigma;
+    private double kappa;
+    private final double amdahl;
+
+    /**
+     * @param levels 线程数，从小到大
+     * @param throughput 各线程数的合计吞吐量(ops/s)
+     */
+    public Scalability(int[] levels, double[] throughput) {
+        if (levels.length != throughput.length || levels.length == 0)
+            throw new IllegalArgumentException("Levels and throughput must have the same non-zero length.");
+        this.levels = levels.clone();
+        this.throughput = throughput.clone();
+        this.lambda = throughput[0] / Math.max(levels[0], 1);
+        // y = N/C(N) - 1 = σ(N-1) + κN(N-1) 的最小二乘法
+        double aa = 0.0d, ab = 0.0d, bb = 0.0d, ay = 0.0d, by = 0.0d;
+        for (int i = 0; i < levels.length; i++) {
+            final double n = Math.max(levels[i], 1);
+            final double c = throughput[i] / lambda;
+            final double y = n / c - 1.0d;
+            final double a = n - 1.0d;
+            final double b = n * (n - 1.0d);
+            aa += a * a;
+            ab += a * b;
+            bb += b * b;
+            ay += a * y;
+            by += b * y;
+        }
+        amdahl = aa > 0.0d ? Math.max(ay / aa, 0.0d) : 0.0d;
+        final double det = aa * bb - ab * ab;
+        if (Math.abs(det) > 1e-9 * aa * bb) {
+            sigma = (ay * bb - by * ab) / det;
+            kappa = (by * aa - ay * ab) / det;
+        } else {
+            sigma = amdahl;
+            kappa = 0.0d;
+        }
+        // 误差范围内的κ看作0
+        if (kappa < 1e-9d) {
+            kappa = 0.0d;
+            sigma = amdahl;
+        }
+        if (sigma < 0.0d) {
+            sigma = 0.0d;
+            kappa = bb > 0.0d ? Math.max(by / bb, 0.0d) : 0.0d;
+        }
+    }
+
+    public int[] levels() {
+        return levels.clone();
+    }
+
+    public double throughput(int index) {
+        return throughput[index];
+    }
+
+    //相对于线性扩展的效率
+    public double efficiency(int index) {
+        return throughput[index] / (lambda * Math.max(levels[index], 1));
+    }
+
+    //竞争系数
+    public double sigma() {
+        return sigma;
+    }
+
+    //一致性系数
+    public double kappa() {
+        return kappa;
+    }
+
+    //只考虑竞争时(Amdahl定律)的串行比例
+    public double amdahl() {
+        return amdahl;
+    }
+
+    //USL预测的吞吐量
+    public double predict(int n) {
+        return lambda * n / (1.0d + sigma * (n - 1) + kappa * n * (n - 1));
+    }
+
+    //吞吐量最大的线程数，κ=0时没有峰值返回Integer.MAX_VALUE
+    public int peak() {
+        if (kappa <= 0.0d)
+            return Integer.MAX_VALUE;
+        return (int) Math.round(Math.sqrt((1.0d - sigma) / kappa));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < levels.length; i++) {
+            sb.append(String.format("%d:%.3fK/s(%.1f%%) ", levels[i], throughput[i] / 1000.0d, efficiency(i) * 100.0d));
+        }
+        sb.append(String.format("USL sigma:%.5f kappa:%.6f peak:%s Amdahl sigma:%.5f",
+                sigma, kappa, peak() == Integer.MAX_VALUE ? "-" : String.valueOf(peak()), amdahl));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package net.tiny.benchmark;
+
+/**
+ * 状态对象(@State)的共享范围。
+ * <ul>
+ * <li>THREAD : 每个测试线程各自的实例，线程间不共享，没有竞争和False sharing</li>
+ * <li>BENCHMARK : 一个@Benchmark Method的所有线程共享一个实例(参数化测试时是每组参数)</li>
+ * <li>SHARED : 一个测试Class的所有@Benchmark Method共享一个实例</li>
+ * </ul>
+ */
+public enum Scope {
+    THREAD,
+    BENCHMARK,
+    SHARED
+}
@@ -0,0 +1,32 @@
+package net.tiny.benchmark;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 作为@Benchmark Method参数注入的状态对象。
+ * 类需要有无参数的构造函数(内部类要声明为static)，创建后执行@Setup的Method，
+ * 范围结束时执行@TearDown的Method。
+ * <pre>
+ * &#64;State(Scope.THREAD)
+ * public static class Data {
+ *     float[] values;
+ *     &#64;Setup
+ *     public void setup() {
+ *         values = new float[1024];
+ *     }
+ * }
+ *
+ * &#64;Benchmark(measure=1000, threads=4)
+ * public void testNorm(Data data, Blackhole blackhole) {
+ *     blackhole.consume(norm(data.values));
+ * }
+ * </pre>
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface State {
+    Scope value() default Scope.THREAD;
+}
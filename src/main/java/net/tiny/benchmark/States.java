@@ -0,0 +1,164 @@
+package net.tiny.benchmark;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterResolutionException;
+import org.junit.platform.commons.support.AnnotationSupport;
+import org.junit.platform.commons.support.HierarchyTraversalMode;
+
+/**
+ * 一个测试的状态对象(@State)。
+ * THREAD的实例按Worker的编号保存，测试线程数不同的多次执行中编号相同时使用同一个实例。
+ * 实例在第一次使用时创建并执行@Setup，close()时按创建的反顺序执行@TearDown(都是Level.TRIAL)。
+ * Level.BATCH和Level.ITERATION的Setup/TearDown由测试线程在测试中执行。
+ * 保存在测试Method的Store中，SHARED的实例保存在测试Class的Store中。
+ */
+final class States implements ExtensionContext.Store.CloseableResource {
+
+    private final States shared; // SHARED范围的状态，null时和BENCHMARK相同
+    private final Map<Class<?>, Object> singles = new LinkedHashMap<>();
+    private final Map<Class<?>, List<Object>> threads = new LinkedHashMap<>();
+    private final List<Object> created = new ArrayList<>();
+
+    States(States shared) {
+        this.shared = shared;
+    }
+
+    static boolean isState(Class<?> type) {
+        return type.isAnnotationPresent(State.class);
+    }
+
+    static Scope scope(Class<?> type) {
+        return type.getAnnotation(State.class).value();
+    }
+
+    /**
+     * @param index Worker的编号，JUnit执行的第一次调用是0
+     */
+    Object get(Class<?> type, int index) {
+        switch (scope(type)) {
+        case THREAD:
+            synchronized (this) {
+                final List<Object> list = threads.computeIfAbsent(type, k -> new ArrayList<>());
+                while (list.size() <= index) {
+                    list.add(create(type));
+                }
+                return list.get(index);
+            }
+        case SHARED:
+            if (null != shared)
+                return shared.single(type);
+            return single(type);
+        default:
+            return single(type);
+        }
+    }
+
+    private synchronized Object single(Class<?> type) {
+        Object state = singles.get(type);
+        if (null == state) {
+            state = create(type);
+            singles.put(type, state);
+        }
+        return state;
+    }
+
+    private Object create(Class<?> type) {
+        try {
+            final Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            final Object state = constructor.newInstance();
+            for (Method method : setups(type, Level.TRIAL)) {
+                method.invoke(state);
+            }
+            created.add(state);
+            return state;
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException e) {
+            throw new ParameterResolutionException(String.format(
+                    "Can not create state '%s', a static class with a default constructor is required.", type.getName()), e);
+        } catch (InvocationTargetException e) {
+            throw Invoker.<RuntimeException>sneaky(e.getCause());
+        }
+    }
+
+    /**
+     * 把状态对象的BATCH和ITERATION的Setup/TearDown加到测试线程的hooks中
+     */
+    static Hooks hooks(Object state, Hooks hooks) {
+        for (Level level : new Level[] {Level.BATCH, Level.ITERATION}) {
+            for (Method method : setups(state.getClass(), level)) {
+                hooks.setup(level, () -> call(state, method));
+            }
+            final List<Method> tearDowns = tearDowns(state.getClass(), level);
+            // TearDown按反顺序追加
+            for (int i = tearDowns.size() - 1; i >= 0; i--) {
+                final Method method = tearDowns.get(i);
+                hooks.tearDown(level, () -> call(state, method));
+            }
+        }
+        return hooks;
+    }
+
+    private static List<Method> setups(Class<?> type, Level level) {
+        return methods(type, Setup.class, HierarchyTraversalMode.TOP_DOWN,
+                method -> method.getAnnotation(Setup.class).value() == level);
+    }
+
+    private static List<Method> tearDowns(Class<?> type, Level level) {
+        return methods(type, TearDown.class, HierarchyTraversalMode.BOTTOM_UP,
+                method -> method.getAnnotation(TearDown.class).value() == level);
+    }
+
+    private static List<Method> methods(Class<?> type, Class<? extends Annotation> hook,
+            HierarchyTraversalMode mode, Predicate<Method> filter) {
+        final List<Method> methods = new ArrayList<>();
+        for (Method method : AnnotationSupport.findAnnotatedMethods(type, hook, mode)) {
+            if (filter.test(method)) {
+                method.setAccessible(true);
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    private static void call(Object state, Method method) {
+        try {
+            method.invoke(state);
+        } catch (InvocationTargetException e) {
+            throw Invoker.<RuntimeException>sneaky(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw Invoker.<RuntimeException>sneaky(e);
+        }
+    }
+
+    // 所有实例都执行@TearDown，最初的异常在最后抛出
+    @Override
+    public synchronized void close() {
+        Throwable failure = null;
+        for (int i = created.size() - 1; i >= 0; i--) {
+            try {
+                for (Method method : tearDowns(created.get(i).getClass(), Level.TRIAL)) {
+                    method.invoke(created.get(i));
+                }
+            } catch (InvocationTargetException e) {
+                failure = null == failure ? e.getCause() : failure;
+            } catch (IllegalAccessException e) {
+                failure = null == failure ? e : failure;
+            }
+        }
+        created.clear();
+        singles.clear();
+        threads.clear();
+        if (null != failure)
+            throw Invoker.<RuntimeException>sneaky(failure);
+    }
+}
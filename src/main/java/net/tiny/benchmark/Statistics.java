@@ -1,11 +1,23 @@
 package net.tiny.benchmark;
 
+import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.ArrayDeque;
+import java.util.stream.Collector;
+import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
-public class Statistics {
+/**
+ * 压力测试结果的统计。
+ * 平均值和分散使用Welford算法逐次计算，几何平均在对数域计算，不会溢出。
+ * 原始数据只保留最近的capacity个(环形缓冲)，push()不分配对象。
+ * 不是线程安全的，多线程时用combine()合并各线程的结果。
+ */
+public class Statistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int CAPACITY = 4096;
 
     private long count;
     private double min = Double.MAX_VALUE;
@@ -14,11 +26,25 @@ public class Statistics {
     private double squares = 0.0d;
     private double last;
     private double avg;
+    private double welford = 0.0d; // Welford平均值
+    private double m2 = 0.0d;      // 偏差平方和
     private double log = 0.0d;
     private double prod = 1.0d;
     private double mind = Double.MAX_VALUE;
     private double med = 0.0d;
-    private ArrayDeque<Double> values = new ArrayDeque<>();
+    private final double[] values;
+    private int head = 0;
+    private int size = 0;
+
+    public Statistics() {
+        this(CAPACITY);
+    }
+
+    public Statistics(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        values = new double[capacity];
+    }
 
     public void push(double x) {
         sum += x;
@@ -28,6 +54,9 @@ public class Statistics {
         last = x;
         ++count;
         avg = sum / count;
+        final double delta = x - welford;
+        welford += delta / count;
+        m2 += delta * (x - welford);
         final double d = Math.abs(x - avg);
         if (mind > d) {
             mind = d;
@@ -35,13 +64,49 @@ public class Statistics {
         }
         log += Math.log(x);
         prod *= x;
-        values.add(x);
-        // If the sum of squares exceeds Long.MAX_VALUE, this means the
-        // value has overflowed; reset the state back to zero and start again.
-        // All previous calculations are lost.  (Better as all doubles?)
-        if (squares < 0L) {
-            clear();
+        values[head] = x;
+        head = (head + 1) % values.length;
+        if (size < values.length)
+            size++;
+    }
+
+    /**
+     * 合并其他Statistics的结果(Chan的并行算法)，和按顺序push()所有数据的结果相同。
+     * 多线程时每个线程使用自己的Statistics，结束后合并。
+     * @return this
+     */
+    public Statistics combine(Statistics other) {
+        if (other.count == 0L)
+            return this;
+        if (count == 0L) {
+            mind = other.mind;
+            med = other.med;
+        }
+        final long n = count + other.count;
+        final double delta = other.welford - welford;
+        m2 += other.m2 + delta * delta * ((double)count * other.count / n);
+        welford += delta * other.count / n;
+        count = n;
+        sum += other.sum;
+        squares += other.squares;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        last = other.last;
+        avg = sum / count;
+        log += other.log;
+        prod *= other.prod;
+        if (Math.abs(other.med - avg) < Math.abs(med - avg)) {
+            med = other.med;
+        }
+        mind = Math.abs(med - avg);
+        final double[] samples = other.samples();
+        for (double x : samples) {
+            values[head] = x;
+            head = (head + 1) % values.length;
+            if (size < values.length)
+                size++;
         }
+        return this;
     }
 
     public long count() {
@@ -84,16 +149,16 @@ public class Statistics {
     }
     //几何平均
     public double geometricMean() {
-        return Math.pow(product(), 1.0d/count);
+        if (count == 0L)
+            return 0.0d;
+        // 在对数域计算，乘积溢出或下溢时也不损失精度
+        return Math.exp(log / count);
     }
     //分散
     public double variance() {
-        double var = 0.0d;
-        for(double a :values) {
-            double d = a - avg;
-            var += d * d;
-        }
-        return var / (double)count;
+        if (count == 0L)
+            return 0.0d;
+        return m2 / (double)count;
     }
     //标准偏差
     public double sdev() {
@@ -104,14 +169,38 @@ public class Statistics {
         return med;
      }
 
+    //最近window个数据的变异系数(标准偏差/平均值)，数据不足时返回NaN
+    public double cv(int window) {
+        if (window < 2 || size < window)
+            return Double.NaN;
+        double m = 0.0d;
+        double q = 0.0d;
+        for (int i = 1; i <= window; i++) {
+            final double x = values[(head - i + values.length) % values.length];
+            final double delta = x - m;
+            m += delta / i;
+            q += delta * (x - m);
+        }
+        return m == 0.0d ? Double.NaN : Math.sqrt(q / window) / m;
+    }
+
+    //保留的原始数据，按时间顺序
+    public double[] samples() {
+        final double[] array = new double[size];
+        final int start = size < values.length ? 0 : head;
+        for (int i = 0; i < size; i++) {
+            array[i] = values[(start + i) % values.length];
+        }
+        return array;
+    }
+
     //正规化
     public double[] normalize() {
-        double[] array = new double[values.size()];
-        Double[] all = values.toArray(new Double[values.size()]);
+        double[] array = samples();
         double d = sdev();
         double ave = average();
-        for(int i=0; i<values.size(); i++) {
-            array[i] = (all[i] - ave) / d;
+        for(int i=0; i<array.length; i++) {
+            array[i] = (array[i] - ave) / d;
         }
         return array;
     }
@@ -123,7 +212,15 @@ public class Statistics {
         squares = 0.0d;
         count = 0L;
         last = 0.0d;
-        values.clear();
+        avg = 0.0d;
+        welford = 0.0d;
+        m2 = 0.0d;
+        log = 0.0d;
+        prod = 1.0d;
+        mind = Double.MAX_VALUE;
+        med = 0.0d;
+        head = 0;
+        size = 0;
     }
 
     @Override
@@ -148,9 +245,21 @@ public class Statistics {
     }
 
     public static Statistics load(Stream<Double> stream) {
-        Statistics statistics = new Statistics();
-        stream.forEach(v -> statistics.push(v));
-        stream.close();
-        return statistics;
+        try (Stream<Double> s = stream) {
+            return s.collect(collector());
+        }
+    }
+
+    public static Statistics load(DoubleStream stream) {
+        try (DoubleStream s = stream) {
+            return s.collect(Statistics::new, Statistics::push, Statistics::combine);
+        }
+    }
+
+    /**
+     * 并行Stream时各线程用自己的Statistics统计，最后用combine()合并
+     */
+    public static Collector<Double, ?, Statistics> collector() {
+        return Collector.of(Statistics::new, Statistics::push, Statistics::combine);
     }
 }
@@ -0,0 +1,16 @@
+package net.tiny.benchmark;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 状态对象(@State)的后处理，没有参数。
+ * 默认在范围结束时执行一次，指定Level.BATCH或Level.ITERATION时在测试中反复执行，时间不计入测试时间。
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TearDown {
+    Level value() default Level.TRIAL;
+}
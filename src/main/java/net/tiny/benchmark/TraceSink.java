@@ -0,0 +1,143 @@
+package net.tiny.benchmark;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 测试中的trace输出。
+ * 测试线程只把数值写入预先分配的环形缓冲(无锁，多个写入线程)，由后台线程格式化后输出，
+ * 测试Loop中不执行String.format和synchronized的PrintStream。
+ * 缓冲满时不等待，丢弃该记录并计数，丢弃的个数输出到最后输出的记录的PrintStream。
+ */
+final class TraceSink {
+
+    static final int CAPACITY = 1024;
+    private static final long IDLE_PARK = 1000000L; // 没有记录时后台线程休眠1ms
+    private static final TraceSink SHARED = new TraceSink(CAPACITY);
+
+    private final int mask;
+    private final String[] prefixes;
+    private final PrintStream[] outs;
+    private final long[] counts;
+    private final long[] times;
+    private final double[] kips;
+    // 每个槽位已写完的序号，后台线程读到和自己的序号相同时才读取
+    private final AtomicLongArray published;
+    private final AtomicLong tail = new AtomicLong(0L);
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private volatile long head = 0L;
+    private volatile Thread consumer;
+    private long reported = 0L;
+    private PrintStream last; // 最后输出的记录的PrintStream
+
+    TraceSink(int capacity) {
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        mask = capacity - 1;
+        prefixes = new String[capacity];
+        outs = new PrintStream[capacity];
+        counts = new long[capacity];
+        times = new long[capacity];
+        kips = new double[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1L);
+        }
+    }
+
+    static TraceSink shared() {
+        return SHARED;
+    }
+
+    /**
+     * 写入一个trace记录，不阻塞
+     * @return 缓冲满被丢弃时是false
+     */
+    boolean publish(String prefix, PrintStream out, long count, long time, double k) {
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head >= prefixes.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!tail.compareAndSet(seq, seq + 1L));
+        final int slot = (int)(seq & mask);
+        prefixes[slot] = prefix;
+        outs[slot] = out;
+        counts[slot] = count;
+        times[slot] = time;
+        kips[slot] = k;
+        published.lazySet(slot, seq);
+        if (null == consumer)
+            start();
+        return true;
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 等待到现在为止写入的记录全部输出，测试结束后调用
+     */
+    void flush() {
+        final long target = tail.get();
+        while (head < target) {
+            if (null == consumer) {
+                drain(); // 后台线程没有启动时直接输出
+            } else {
+                LockSupport.unpark(consumer);
+                LockSupport.parkNanos(IDLE_PARK / 10L);
+            }
+        }
+        report();
+    }
+
+    private synchronized void start() {
+        if (null != consumer)
+            return;
+        consumer = new Thread(this::consume, "benchmark-trace");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    private void consume() {
+        while (!Thread.currentThread().isInterrupted()) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(IDLE_PARK);
+            }
+        }
+    }
+
+    // 按序号顺序输出已经写完的记录
+    private synchronized int drain() {
+        int n = 0;
+        long seq = head;
+        while (true) {
+            final int slot = (int)(seq & mask);
+            if (published.get(slot) != seq)
+                break;
+            last = outs[slot];
+            last.println(String.format("%s[%07d]\t%s\t%.3fK/s",
+                    prefixes[slot], counts[slot], Benchmarker.elapsed(times[slot]), kips[slot]));
+            prefixes[slot] = null;
+            outs[slot] = null;
+            seq++;
+            head = seq;
+            n++;
+        }
+        report();
+        return n;
+    }
+
+    private synchronized void report() {
+        final long d = dropped.get();
+        if (d > reported && null != last) {
+            last.println(String.format("trace: %d records dropped", d - reported));
+            reported = d;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package net.tiny.benchmark;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 多线程压力测试时每个线程独自持有的计数器和计时窗口。
+ * 热点字段前后用long填充，防止多个Worker落在同一个Cache line上(False sharing)。
+ * 测试结束后由Benchmarker统一合并结果。
+ */
+final class Worker extends WorkerFields implements Runnable {
+    // 离预定时间还有这么久以上时先park，剩下的自旋等待(park的精度只有几十µs)
+    private static final long PARK_THRESHOLD = 100000L;
+
+    long p10, p11, p12, p13, p14, p15, p16;
+
+    final Statistics statistics;
+    final Histogram histogram;
+    final Blackhole blackhole = new Blackhole();
+    final Supplier<Object> supplier;
+    final String prefix;
+    final PrintStream out;
+    double steady = 0.0d;
+    int window;
+    Throwable failure;
+    long allocated = -1L; // 测试中本线程分配的内存(byte)，不支持时是-1
+    long cpuTime = -1L; // 测试中本线程使用的CPU时间(ns)，不支持时是-1
+    long userTime = -1L; // 其中用户模式的CPU时间(ns)
+    int inFlight = 1; // 测试对象返回CompletionStage时，同时未完成的最大个数
+    boolean async = false;
+    private final Object lock = new Object();
+    private int pending = 0; // 未完成的CompletionStage个数
+    private volatile Throwable asyncFailure;
+    WorkerPool.Round round = new WorkerPool.Round();
+    // Level.BATCH/ITERATION的Setup/TearDown，没有时是null
+    Runnable batchSetup;
+    Runnable batchTearDown;
+    Runnable setup;
+    Runnable tearDown;
+
+    /**
+     * @param duration 大于0时是限时测试(ns)，到时间或者到total次后结束
+     */
+    Worker(Supplier<Object> supplier, String prefix, long total, long traces, long duration, boolean latency) {
+        this(supplier, prefix, total, traces, duration, latency, Statistics.CAPACITY);
+    }
+
+    /**
+     * @param capacity 保留的吞吐量数据个数，线程数很多时减少内存的使用
+     */
+    Worker(Supplier<Object> supplier, String prefix, long total, long traces, long duration, boolean latency, int capacity) {
+        this.statistics = new Statistics(capacity);
+        this.supplier = supplier;
+        this.prefix = prefix;
+        this.out = System.out;
+        this.total = total;
+        this.traces = traces;
+        this.duration = duration;
+        this.histogram = latency ? new Histogram() : null;
+    }
+
+    @Override
+    public void run() {
+        startNanoTime = System.nanoTime();
+        nanoTime = startNanoTime;
+        deadline = duration > 0L ? startNanoTime + duration : 0L;
+        final long bytes = Probe.allocatedBytes();
+        final long cpu = Probe.cpuTime();
+        final long user = Probe.userTime();
+        try {
+            measure();
+            drain();
+        } catch (Throwable e) {
+            failure = e;
+            round.stopped = true; // 其他线程也结束
+        }
+        if (null == failure && null != asyncFailure) {
+            failure = asyncFailure;
+        }
+        if (bytes >= 0L) {
+            final long now = Probe.allocatedBytes();
+            allocated = now >= 0L ? now - bytes : -1L;
+        }
+        if (cpu >= 0L && user >= 0L) {
+            final long c = Probe.cpuTime();
+            final long u = Probe.userTime();
+            cpuTime = c >= 0L ? c - cpu : -1L;
+            userTime = u >= 0L ? u - user : -1L;
+        }
+        // 一个计时窗口都没有完成时，用整体的速度
+        if (statistics.count() == 0L && count() > 0L) {
+            statistics.push(Benchmarker.kips((double)(System.nanoTime() - startNanoTime - lost - paused), (double)(count() * operations)));
+        }
+    }
+
+    private void measure() {
+        if (interval > 0.0d) {
+            pace();
+        } else if (null != batchSetup || null != batchTearDown || null != setup || null != tearDown) {
+            measureHooked();
+        } else if (null != histogram) {
+            while (loop()) {
+                final long s = System.nanoTime();
+                final int n = invoke();
+                // 异步时在完成时记录延迟
+                if (!async)
+                    histogram.record((System.nanoTime() - s) / n);
+                trace();
+            }
+        } else {
+            while (loop()) {
+                invoke();
+                trace();
+            }
+        }
+    }
+
+    // 有Setup/TearDown时，它们的时间从计时窗口和延迟中除去
+    private void measureHooked() {
+        while (loop()) {
+            final long p = paused;
+            final long s = System.nanoTime();
+            final int n = invokeHooked();
+            if (null != histogram && !async)
+                histogram.record((System.nanoTime() - s - (paused - p)) / n);
+            trace();
+        }
+    }
+
+    /**
+     * 开环测试，按预定的开始时间调用，测试对象变慢也不推迟之后的调用(不等待上一次的结果)。
+     * 异步时也不等待CompletionStage完成，不受inFlight的限制。
+     * 延迟从预定的开始时间算起，包含排队的时间(Coordinated omission修正)。
+     */
+    private void pace() {
+        while (loop()) {
+            final long intended = startNanoTime + phase + (long)(count * interval);
+            if (deadline != 0L && intended - deadline >= 0L)
+                break;
+            Hooks.run(batchSetup);
+            Hooks.run(setup);
+            final long wait = intended - System.nanoTime();
+            if (wait > PARK_THRESHOLD) {
+                LockSupport.parkNanos(wait - PARK_THRESHOLD);
+            }
+            long now;
+            while ((now = System.nanoTime()) - intended < 0L) {
+                // 自旋到预定时间
+            }
+            final long lag = now - intended;
+            if (lag > maxLag)
+                maxLag = lag;
+            if (lag > interval)
+                late++;
+            final Object result = supplier.get();
+            if (async || result instanceof CompletionStage) {
+                track(stage(result), intended);
+            } else {
+                blackhole.consume(result);
+            }
+            count++;
+            if (null != histogram && !async)
+                histogram.record(System.nanoTime() - intended);
+            // 开环测试的Setup/TearDown在调用间的空闲时间执行，慢时表现为开始的延迟
+            Hooks.run(tearDown);
+            Hooks.run(batchTearDown);
+            trace();
+        }
+    }
+
+    // 一次调用batch次测试对象，之间不检查计数器和计时器
+    private int invoke() {
+        final int n = (int)Math.min(batch, total - count);
+        for (int i = 0; i < n; i++) {
+            if (async) {
+                final long s = System.nanoTime();
+                submit(stage(supplier.get()), s);
+                continue;
+            }
+            final Object result = supplier.get();
+            if (result instanceof CompletionStage) {
+                submit((CompletionStage<?>) result, System.nanoTime());
+            } else {
+                blackhole.consume(result);
+            }
+        }
+        count += n;
+        return n;
+    }
+
+    private int invokeHooked() {
+        final int n = (int)Math.min(batch, total - count);
+        pause(batchSetup);
+        for (int i = 0; i < n; i++) {
+            pause(setup);
+            final Object result = supplier.get();
+            if (async || result instanceof CompletionStage) {
+                submit(stage(result), System.nanoTime());
+            } else {
+                blackhole.consume(result);
+            }
+            pause(tearDown);
+        }
+        pause(batchTearDown);
+        count += n;
+        return n;
+    }
+
+    // 执行Setup/TearDown，时间记入paused
+    private void pause(Runnable hook) {
+        if (null == hook)
+            return;
+        final long s = System.nanoTime();
+        hook.run();
+        paused += System.nanoTime() - s;
+    }
+
+    /**
+     * 测试对象返回的CompletionStage完成时才算一次调用结束。
+     * 未完成的个数达到inFlight时，等待任意一个完成后再调用下一次。
+     */
+    private void submit(CompletionStage<?> stage, long start) {
+        track(stage, start);
+        await(inFlight - 1);
+    }
+
+    // 登记未完成的CompletionStage，不等待
+    private void track(CompletionStage<?> stage, long start) {
+        async = true;
+        if (null != asyncFailure)
+            throw Invoker.<RuntimeException>sneaky(asyncFailure);
+        synchronized (lock) {
+            pending++;
+        }
+        stage.whenComplete((value, error) -> complete(error, start));
+    }
+
+    // 返回过CompletionStage的测试对象，之后也必须返回CompletionStage
+    private static CompletionStage<?> stage(Object result) {
+        if (result instanceof CompletionStage)
+            return (CompletionStage<?>) result;
+        throw new IllegalStateException(String.format(
+                "Benchmark target returned %s after a CompletionStage, an async target must always return a CompletionStage.",
+                null == result ? "null" : result.getClass().getName()));
+    }
+
+    // 可能在其他线程上执行
+    private void complete(Throwable error, long start) {
+        if (null != histogram) {
+            final long t = System.nanoTime() - start;
+            synchronized (histogram) {
+                histogram.record(t);
+            }
+        }
+        if (null != error && null == asyncFailure) {
+            asyncFailure = error instanceof CompletionException && null != error.getCause() ? error.getCause() : error;
+            round.stopped = true;
+        }
+        synchronized (lock) {
+            pending--;
+            lock.notifyAll();
+        }
+    }
+
+    // 等待未完成的个数小于等于max
+    private void await(int max) {
+        synchronized (lock) {
+            while (pending > max) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw Invoker.<RuntimeException>sneaky(e);
+                }
+            }
+        }
+    }
+
+    // 测试结束前等待所有CompletionStage完成
+    private void drain() {
+        if (async)
+            await(0);
+    }
+
+    boolean loop() {
+        if (count >= total || round.stopped)
+            return false;
+        if (deadline == 0L)
+            return true;
+        // 限时测试时每次都要读时钟，计时窗口也用这个时间判断
+        now = System.nanoTime();
+        return now < deadline;
+    }
+
+    long count() {
+        return count;
+    }
+
+    void trace() {
+        final long n = count - windowCount;
+        if (n >= traces || (period > 0L && now - nanoTime >= period)) {
+            final long now = System.nanoTime();
+            final long t = now - nanoTime - (paused - windowPaused);
+            final double k = Benchmarker.kips((double)t, (double)(n * operations));
+            if (null != prefix) {
+                // 格式化和输出由后台线程执行
+                TraceSink.shared().publish(prefix, out, count, t, k);
+            }
+            statistics.push(k);
+            if (steady > 0.0d && statistics.cv(window) < steady) {
+                total = count; // 吞吐量已稳定，结束预热
+            }
+            windowCount = count;
+            windowPaused = paused;
+            nanoTime = System.nanoTime();
+            lost += (nanoTime - now);
+        }
+    }
+}
+
+abstract class WorkerPadding {
+    long p00, p01, p02, p03, p04, p05, p06;
+}
+
+abstract class WorkerFields extends WorkerPadding {
+    long count = 0L;
+    long windowCount = 0L;
+    long total;
+    int batch = 1;
+    int operations = 1;
+    long traces;
+    long nanoTime;
+    long lost;
+    long paused; // Setup/TearDown(Level.BATCH/ITERATION)的合计时间(ns)
+    long windowPaused; // 计时窗口开始时的paused
+    long duration;
+    long deadline;
+    long startNanoTime;
+    long now; // 限时测试时loop()读到的时钟
+    long period; // 大于0时按时间划分计时窗口(ns)，不按次数
+    double interval; // 大于0时是固定速率的开环测试，每个线程的调用间隔(ns)
+    long phase; // 各线程错开的开始时间(ns)
+    long maxLag; // 实际开始比预定时间最多晚了多久
+    long late; // 晚了一个调用间隔以上才开始的次数
+}
@@ -0,0 +1,126 @@
+package net.tiny.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+
+/**
+ * 多线程压力测试用的常驻线程池。
+ * 线程只在第一次使用时生成，之后的测试重复使用，线程的生成时间不计入测试时间。
+ * 所有线程就绪后才开始计时并同时放行(Start barrier)，全部线程结束后停止计时。
+ * 任一线程出错时设置停止标志，其他线程也尽快结束。
+ */
+final class WorkerPool {
+
+    private static final WorkerPool SHARED = new WorkerPool("benchmark-worker");
+
+    private final String name;
+    private final List<Slot> slots = new ArrayList<>();
+
+    WorkerPool(String name) {
+        this.name = name;
+    }
+
+    static WorkerPool shared() {
+        return SHARED;
+    }
+
+    synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * 在池中的线程上执行所有任务，全部结束后返回。
+     * @param tasks 每个线程执行一个任务
+     * @param round 开始放行和停止的标志
+     * @param started 所有线程就绪后，放行之前在调用线程上执行(开始计时)
+     */
+    synchronized void execute(Runnable[] tasks, Round round, Runnable started) {
+        while (slots.size() < tasks.length) {
+            final Slot slot = new Slot(String.format("%s-%d", name, slots.size()));
+            slot.start();
+            slots.add(slot);
+        }
+        final CountDownLatch ready = new CountDownLatch(tasks.length);
+        final CountDownLatch done = new CountDownLatch(tasks.length);
+        for (int i = 0; i < tasks.length; i++) {
+            final Runnable task = tasks[i];
+            slots.get(i).submit(() -> {
+                ready.countDown();
+                // 自旋等待，放行时所有线程几乎同时开始
+                while (!round.started) {
+                    Thread.yield();
+                }
+                try {
+                    task.run();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        await(ready, round);
+        started.run();
+        round.started = true;
+        await(done, round);
+    }
+
+    private static void await(CountDownLatch latch, Round round) {
+        boolean interrupted = false;
+        while (latch.getCount() > 0L) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                round.stopped = true;
+                round.started = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * 一次测试的开始和停止标志，由所有Worker共享。
+     */
+    static final class Round {
+        volatile boolean started = false;
+        volatile boolean stopped = false;
+    }
+
+    private static final class Slot extends Thread {
+        private final SynchronousQueue<Runnable> queue = new SynchronousQueue<>();
+
+        Slot(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        void submit(Runnable job) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(job);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    queue.take().run();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Throwable e) {
+                    // 任务中的异常由Worker自己保存
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.tiny.benchmark;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+
+public class BaselineTest {
+
+    @Test
+    public void testStudentDistribution() {
+        assertEquals(0.5d, Baseline.studentCdf(0.0d, 10.0d), 1e-9d);
+        // t分布表 df=10: t=1.812 → 0.95, t=2.764 → 0.99
+        assertEquals(0.95d, Baseline.studentCdf(1.812d, 10.0d), 1e-3d);
+        assertEquals(0.01d, Baseline.studentCdf(-2.764d, 10.0d), 1e-3d);
+        // 自由度很大时接近正态分布
+        assertEquals(0.975d, Baseline.studentCdf(1.96d, 100000.0d), 1e-3d);
+        assertEquals(18.0d, Baseline.welchDegrees(1.0d, 10L, 1.0d, 10L), 1e-9d);
+    }
+
+    @Test
+    public void testRegression() throws Exception {
+        Path file = Files.createTempDirectory("baseline").resolve("baseline.properties");
+        Statistics base = Statistics.load(new double[] {100.0d, 101.0d, 99.0d, 100.5d, 99.5d, 100.0d});
+        Baseline writer = new Baseline(file, true);
+        String key = Baseline.key("a.B", "test", "", 0);
+        assertEquals("a.B.test@1", key);
+        writer.put(key, base);
+        writer.close();
+        assertTrue(Files.exists(file));
+
+        Baseline baseline = new Baseline(file, false);
+        assertFalse(baseline.writable());
+        assertEquals(6.0d, baseline.get(key)[0]);
+        assertNull(baseline.compare("a.B.other@1", base, 0.05d));
+
+        Statistics same = Statistics.load(new double[] {99.0d, 100.0d, 101.0d, 100.0d, 99.5d});
+        Baseline.Comparison ok = baseline.compare(key, same, 0.05d);
+        System.out.println(ok);
+        assertFalse(ok.regressed(0.05d));
+
+        Statistics slow = Statistics.load(new double[] {80.0d, 81.0d, 79.0d, 80.5d, 79.5d});
+        Baseline.Comparison ng = baseline.compare(key, slow, 0.05d);
+        System.out.println(ng);
+        assertTrue(ng.regressed(0.05d));
+        assertEquals(-0.2d, ng.change(), 0.01d);
+
+        // 下降在允许范围内
+        Statistics little = Statistics.load(new double[] {97.0d, 98.0d, 96.0d, 97.5d, 96.5d});
+        assertFalse(baseline.compare(key, little, 0.05d).regressed(0.05d));
+    }
+}
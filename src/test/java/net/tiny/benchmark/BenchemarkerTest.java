@@ -3,7 +3,16 @@ package net.tiny.benchmark;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 
 public class BenchemarkerTest {
@@ -62,6 +71,494 @@ public class BenchemarkerTest {
         bench.metric(System.out);
     }
 
+    @Test
+    public void testRunThreads() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        Method method = TestTask.class.getDeclaredMethod("norm");
+        bench.target(task, method)
+            .run(10000L, 4);
+        bench.metric("Threads", System.out);
+        assertEquals(40000L, bench.count());
+    }
+
+    @Test
+    public void testForkJoinQueued() throws Exception {
+        // 线程数是并行度的4倍，同时执行的只有并行度个
+        final int parallelism = Execution.FORK_JOIN.concurrency(Integer.MAX_VALUE);
+        final int threads = parallelism * 4;
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> {
+            try {
+                Thread.sleep(2L);
+            } catch (InterruptedException e) {
+            }
+            return null;
+        }).execution(Execution.FORK_JOIN)
+            .run(20L * threads, threads);
+        bench.metric("ForkJoin", System.out);
+        assertEquals(threads, bench.threads);
+        assertEquals(parallelism, bench.concurrency);
+        assertTrue(bench.metric("ForkJoin").contains(String.format(" queued:%d/%d", threads - parallelism, threads)));
+        // 每次调用约2ms，排队的时间不算在ns/op中
+        assertTrue(bench.nanos() >= 2000000.0d && bench.nanos() < 8000000.0d, String.valueOf(bench.nanos()));
+        assertTrue(bench.throughput() <= parallelism * 500.0d, String.valueOf(bench.throughput()));
+    }
+
+    @Test
+    public void testVirtualUnsupported() throws Exception {
+        Assumptions.assumeFalse(Execution.VIRTUAL.supported());
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> null).execution(Execution.VIRTUAL);
+        assertThrows(UnsupportedOperationException.class, () -> bench.run(10L, 2));
+        // 单线程时不使用执行方式
+        bench.run(10L);
+        assertEquals(10L, bench.count());
+    }
+
+    @Test
+    public void testRunDuration() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        Method method = TestTask.class.getDeclaredMethod("norm");
+        long start = System.currentTimeMillis();
+        bench.target(task, method)
+            .run(Duration.ofMillis(200L), 2);
+        long elapsed = System.currentTimeMillis() - start;
+        bench.metric("Duration", System.out);
+        assertTrue(bench.count() > 0L);
+        assertTrue(elapsed >= 200L && elapsed < 2000L);
+    }
+
+    @Test
+    public void testRunLongDuration() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        Method method = TestTask.class.getDeclaredMethod("norm");
+        long start = System.nanoTime();
+        bench.target(task, method)
+            .run(Duration.ofMillis(1500L));
+        long wall = System.nanoTime() - start;
+        bench.metric("Long", System.out);
+        // 超过1秒时测定时间也不能超过实际经过的时间
+        assertTrue(bench.ntime <= wall, bench.elapsed());
+        assertTrue(bench.ntime >= 1400000000L, bench.elapsed());
+    }
+
+    @Test
+    public void testRunAtRate() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        Method method = TestTask.class.getDeclaredMethod("norm");
+        bench.target(task, method)
+            .runAtRate(2000.0d, Duration.ofMillis(300L), 2);
+        bench.metric("Rate", System.out);
+        assertEquals(2000.0d, bench.rate());
+        assertEquals(600L, bench.count(), 60L);
+        assertTrue(bench.keptUp());
+        assertEquals(bench.count(), bench.histogram().count());
+        // 之后的一般测试不记录延迟
+        bench.run(1000L);
+        assertNull(bench.histogram());
+        assertEquals(Calibration.get().overhead(false), bench.harness);
+    }
+
+    @Test
+    public void testRunAtRateLong() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        Method method = TestTask.class.getDeclaredMethod("norm");
+        bench.target(task, method)
+            .runAtRate(1000.0d, Duration.ofMillis(2500L), 1);
+        bench.metric("RateLong", System.out);
+        assertEquals(2500L, bench.count(), 250L);
+        assertEquals(1000.0d, bench.throughput(), 100.0d);
+        assertTrue(bench.keptUp());
+    }
+
+    @Test
+    public void testRunAtRateBehind() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> {
+            try {
+                Thread.sleep(5L);
+            } catch (InterruptedException e) {
+            }
+            return null;
+        }).runAtRate(1000.0d, Duration.ofMillis(200L), 1);
+        bench.metric("Behind", System.out);
+        assertFalse(bench.keptUp());
+        assertTrue(bench.late() > 0L);
+        // 延迟包含排队的时间，远大于处理本身的5ms
+        assertTrue(bench.histogram().max() > 50000000L);
+    }
+
+    @Test
+    public void testAllocation() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> new byte[1024])
+            .run(100000L, 2);
+        bench.metric("Allocation", System.out);
+        assertTrue(bench.allocation() >= 1024.0d);
+        assertTrue(bench.gcCount() >= 0L);
+        assertTrue(bench.gcTime() >= 0L);
+    }
+
+    @Test
+    public void testPrimitiveReturn() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        Counter counter = new Counter();
+        for (String name : new String[] {"nextDouble", "nextLong", "nextInt", "nextFloat", "nextBoolean"}) {
+            bench.target(counter, Counter.class.getDeclaredMethod(name))
+                .run(1000000L);
+            bench.metric(name, System.out);
+            // 返回值不装箱(Double是16byte)
+            assertTrue(bench.allocation() < 1.0d, name);
+        }
+        assertTrue(counter.value > 0.0d);
+    }
+
+    @Test
+    public void testCpuTime() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> {
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException e) {
+            }
+            return null;
+        }).run(10L, 2);
+        bench.metric("Sleep", System.out);
+        // sleep几乎不使用CPU
+        final double sleep = bench.utilization();
+        assertTrue(sleep >= 0.0d && sleep < 0.5d);
+        assertTrue(bench.cpu() < 5000000.0d);
+
+        TestTask task = new TestTask();
+        bench.target(task, TestTask.class.getDeclaredMethod("norm"))
+            .run(100000L);
+        bench.metric("Busy", System.out);
+        assertTrue(bench.cpu() > 0.0d);
+        assertTrue(bench.user() <= bench.cpu());
+        // 负载高的机器上也不依赖绝对值，只比较和sleep的大小
+        assertTrue(bench.utilization() > sleep, String.format("%.3f <= %.3f", bench.utilization(), sleep));
+    }
+
+    @Test
+    public void testWarmup() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        Method method = TestTask.class.getDeclaredMethod("norm");
+        long warmups = bench.target(task, method)
+            .warmup("Steady", 100000L, 0.2d);
+        assertEquals(warmups, bench.warmups());
+        assertTrue(warmups > 0L && warmups <= 100000L);
+        bench.metric("Warmup", System.out);
+    }
+
+    @Test
+    public void testLatencyPerRun() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> Math.sqrt(2.0d)).latency(true);
+        bench.run(1000L);
+        assertEquals(1000L, bench.histogram().count());
+        bench.run(1000L);
+        assertEquals(bench.count(), bench.histogram().count());
+        bench.run(Duration.ofMillis(50L));
+        assertEquals(bench.count(), bench.histogram().count());
+    }
+
+    @Test
+    public void testWarmupLatency() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        bench.target(task, TestTask.class.getDeclaredMethod("norm"))
+            .latency(true)
+            .warmup(10000L, 0.2d);
+        bench.run(1000L);
+        bench.metric("WarmupLatency", System.out);
+        // 预热的调用不计入延迟
+        assertEquals(bench.count(), bench.histogram().count());
+    }
+
+    @Test
+    public void testRunAsync() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Benchmarker bench = new Benchmarker();
+            bench.target(() -> {
+                CompletableFuture<String> future = new CompletableFuture<>();
+                scheduler.schedule(() -> future.complete("done"), 5L, TimeUnit.MILLISECONDS);
+                return future;
+            }).latency(true);
+            // 等待每次完成
+            bench.run(20L);
+            bench.metric("Async", System.out);
+            assertEquals(20L, bench.count());
+            assertEquals(20L, bench.histogram().count());
+            assertTrue(bench.histogram().percentile(50.0d) >= 5000000L);
+            assertTrue(bench.ntime >= 100000000L, bench.elapsed());
+            final double serial = bench.nanos();
+            // 最多同时4个
+            bench.inFlight(4).run(40L);
+            bench.metric("InFlight", System.out);
+            assertEquals(40L, bench.count());
+            assertTrue(bench.ntime >= 50000000L, bench.elapsed());
+            // 不依赖机器的速度，只比较和逐个等待时的快慢
+            assertTrue(bench.nanos() < serial * 0.75d, bench.elapsed());
+
+            bench.target(() -> {
+                CompletableFuture<String> future = new CompletableFuture<>();
+                future.completeExceptionally(new IllegalStateException("async"));
+                return future;
+            });
+            assertThrows(IllegalStateException.class, () -> bench.run(10L));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRunAtRateAsync() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Benchmarker bench = new Benchmarker();
+            // 每次10ms才完成，开环测试不等待完成
+            bench.target(() -> {
+                CompletableFuture<String> future = new CompletableFuture<>();
+                scheduler.schedule(() -> future.complete("done"), 10L, TimeUnit.MILLISECONDS);
+                return future;
+            }).runAtRate(1000.0d, Duration.ofMillis(1000L), 1);
+            bench.metric("RateAsync", System.out);
+            assertEquals(1000L, bench.count(), 100L);
+            assertEquals(bench.count(), bench.histogram().count());
+            assertTrue(bench.histogram().percentile(50.0d) >= 10000000L);
+            assertTrue(bench.keptUp());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAsyncNotStage() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> calls.incrementAndGet() == 1 ? CompletableFuture.completedFuture("done") : null);
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> bench.run(10L));
+        assertTrue(e.getMessage().contains("returned null after a CompletionStage"), e.getMessage());
+
+        calls.set(0);
+        bench.target(() -> calls.incrementAndGet() == 1 ? CompletableFuture.completedFuture("done") : "value");
+        e = assertThrows(IllegalStateException.class, () -> bench.runAtRate(1000.0d, Duration.ofMillis(100L), 1));
+        assertTrue(e.getMessage().contains("java.lang.String"), e.getMessage());
+    }
+
+    @Test
+    public void testRunBlackhole() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        bench.target(blackhole -> {
+            try {
+                blackhole.consume(task.norm());
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }).run(10000L, 2);
+        bench.metric("Blackhole", System.out);
+        assertEquals(20000L, bench.count());
+
+        Blackhole blackhole = new Blackhole();
+        for (int i=0; i<1000; i++) {
+            blackhole.consume(i);
+            blackhole.consume((long)i);
+            blackhole.consume((double)i);
+            blackhole.consume((float)i);
+            blackhole.consume(i % 2 == 0);
+            blackhole.consume(Integer.valueOf(i));
+        }
+    }
+
+    @Test
+    public void testRunBatch() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        Method method = TestTask.class.getDeclaredMethod("norm");
+        bench.target(task, method)
+            .batch(64)
+            .run(10000L);
+        assertEquals(10000L, bench.count());
+        double single = bench.statistics.mean();
+
+        bench.operations(1000)
+            .run(10000L, 2);
+        bench.metric("Operations", System.out);
+        assertEquals(20000L, bench.count());
+        assertTrue(bench.statistics.mean() > single * 100.0d);
+    }
+
+    @Test
+    public void testWorkerPool() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> Thread.currentThread().getName());
+        bench.run(1000L, 4);
+        int size = WorkerPool.shared().size();
+        assertTrue(size >= 4);
+        bench.run(1000L, 3);
+        assertEquals(size, WorkerPool.shared().size());
+        assertEquals(3000L, bench.count());
+
+        // 所有线程同时开始，线程的生成时间不计入测试时间
+        bench.target(() -> {
+            try {
+                Thread.sleep(50L);
+            } catch (InterruptedException e) {
+            }
+            return null;
+        });
+        bench.run(1L);
+        final long single = bench.ntime;
+        bench.run(1L, 8);
+        // 不依赖机器的速度，和一次sleep的实测时间比较，逐个执行时是8倍
+        assertTrue(bench.ntime < single * 4L, bench.elapsed());
+    }
+
+    @Test
+    public void testTargetException() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        Method method = TestTask.class.getDeclaredMethod("fail");
+        bench.target(task, method);
+        assertThrows(InterruptedException.class, () -> bench.run(10L));
+        assertThrows(InterruptedException.class, () -> bench.run(10L, 2));
+    }
+
+    @Test
+    public void testLoopOverhead() throws Exception {
+        double overhead = Calibration.get().overhead(false);
+        System.out.println(String.format("Overhead %.3fns", overhead));
+        assertTrue(overhead > 0.0d);
+        assertEquals(overhead, Calibration.get().overhead(false));
+    }
+
+    @Test
+    public void testSetupExcluded() throws Exception {
+        final int[] values = new int[1000];
+        final AtomicInteger trials = new AtomicInteger();
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicInteger sorted = new AtomicInteger();
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> {
+            Arrays.sort(values);
+            return values;
+        }).setup(Level.TRIAL, () -> trials.incrementAndGet())
+            .setup(Level.BATCH, () -> batches.incrementAndGet())
+            .setup(Level.ITERATION, () -> {
+                // 打乱数组，并且花费比排序长的时间
+                final Random random = new Random();
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = random.nextInt();
+                }
+                try {
+                    Thread.sleep(1L);
+                } catch (InterruptedException e) {
+                }
+            })
+            .tearDown(Level.ITERATION, () -> {
+                if (values[0] <= values[values.length - 1])
+                    sorted.incrementAndGet();
+            })
+            .latency(true)
+            .batch(2)
+            .run(100L);
+        bench.metric("Sort", System.out);
+        assertEquals(1, trials.get());
+        assertEquals(50, batches.get());
+        assertEquals(100, sorted.get());
+        // sleep的时间不计入测试时间和延迟
+        assertTrue(bench.paused() >= 100000000L);
+        assertTrue(bench.ntime < bench.paused() / 2L, bench.elapsed());
+        assertTrue(bench.histogram().percentile(50.0d) < 1000000L);
+
+        // target()时清除
+        bench.batch(1).target(() -> values[0]).run(100L);
+        assertEquals(0L, bench.paused());
+        assertEquals(1, trials.get());
+    }
+
+    @Test
+    public void testCalibration() throws Exception {
+        Calibration calibration = Calibration.get();
+        System.out.println(calibration);
+        assertSame(calibration, Calibration.get());
+        assertTrue(calibration.granularity() > 0L);
+        assertTrue(calibration.latency() > 0.0d);
+        assertTrue(calibration.overhead(true) >= calibration.overhead(false));
+        assertTrue(calibration.startup(Execution.FORK_JOIN) > 0L);
+        // batch的开销按batch大小分别测定
+        assertEquals(calibration.overhead(false), calibration.overhead(false, 1));
+        final double batched = calibration.overhead(false, 100);
+        assertTrue(batched > 0.0d);
+        assertEquals(batched, calibration.overhead(false, 100));
+        Benchmarker batch = new Benchmarker();
+        batch.target(() -> null).batch(100).run(100000L);
+        assertEquals(batched, batch.harness);
+        System.out.println(String.format("Batch overhead %.3fns/%.3fns", batched, calibration.overhead(false)));
+
+        // 空的测试对象只剩测试工具的开销
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> null).run(1000000L);
+        bench.metric("Empty", System.out);
+        assertTrue(bench.harness >= 0.0d);
+        assertTrue(bench.corrected() <= bench.ntime);
+        assertTrue(bench.correctedThroughput() >= bench.throughput());
+
+        // 和校准相同的空Method，结果只有测试工具的开销。机器繁忙时偶尔变慢，预热后最多测5次
+        Benchmarker noop = new Benchmarker();
+        noop.target(new Calibration.Noop(), Calibration.Noop.METHOD).run(1000000L);
+        for (int i = 0; i < 5; i++) {
+            noop.run(1000000L);
+            if (noop.noisy())
+                break;
+        }
+        noop.metric("Noop", System.out);
+        assertTrue(noop.noisy());
+
+        bench.target(() -> {
+            try {
+                Thread.sleep(1L);
+            } catch (InterruptedException e) {
+            }
+            return null;
+        }).run(100L, 2);
+        bench.metric("Sleep", System.out);
+        assertFalse(bench.noisy());
+        assertTrue(bench.correctedNanos() > 1000000.0d);
+    }
+
+    static class Counter {
+        double value = 1000.0d;
+
+        public double nextDouble() {
+            return value += 1.5d;
+        }
+
+        public long nextLong() {
+            return (long)(value += 1.5d);
+        }
+
+        public int nextInt() {
+            return (int)(value += 1.5d);
+        }
+
+        public float nextFloat() {
+            return (float)(value += 1.5d);
+        }
+
+        public boolean nextBoolean() {
+            return (value += 1.5d) > 0.0d;
+        }
+    }
+
     class TestTask {
         private float c = 0.0f;
 
@@ -82,5 +579,9 @@ public class BenchemarkerTest {
             }
             return (float) Math.sqrt(sum);
         }
+
+        public void fail() throws InterruptedException {
+            throw new InterruptedException("fail");
+        }
     }
 }
@@ -0,0 +1,33 @@
+package net.tiny.benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+//同一接口的不同实现在一个测试Class中比较，Class结束时输出排行榜
+public class BenchmarkedCompareTest {
+
+    private static final int SIZE = 1000;
+
+    @Benchmark(measure = 1000, baseline = true)
+    public void testLinkedList(Blackhole blackhole) {
+        blackhole.consume(fill(new LinkedList<>()));
+    }
+
+    @Benchmark(measure = 1000)
+    public void testArrayList(Blackhole blackhole) {
+        blackhole.consume(fill(new ArrayList<>()));
+    }
+
+    @Benchmark(measure = 1000)
+    public void testArrayListSized(Blackhole blackhole) {
+        blackhole.consume(fill(new ArrayList<>(SIZE)));
+    }
+
+    private static List<Integer> fill(List<Integer> list) {
+        for (int i = 0; i < SIZE; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,39 @@
+package net.tiny.benchmark;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.stream.Stream;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import net.tiny.unit.VariableSource;
+
+public class BenchmarkedParameterTest {
+
+    public static Stream<Arguments> dimensions = Stream.of(
+            Arguments.of(8, "small"),
+            Arguments.of(64, "middle"),
+            Arguments.of(512, "large"));
+
+    @Benchmark(measure = 10000)
+    @ParameterizedTest
+    @VariableSource("dimensions")
+    public void testNorm(int dimension, String label, Blackhole blackhole) {
+        assertNotNull(label);
+        double sum = 0.0d;
+        for (int i = 0; i < dimension; i++) {
+            sum += (double) i * i;
+        }
+        blackhole.consume(Math.sqrt(sum));
+    }
+
+    @Benchmark(measure = 1000, threads = 2)
+    @ParameterizedTest
+    @ValueSource(ints = {16, 1024})
+    public void testPayload(int size) {
+        byte[] payload = new byte[size];
+        assertEquals(size, payload.length);
+    }
+}
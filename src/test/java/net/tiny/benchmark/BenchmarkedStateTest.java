@@ -0,0 +1,121 @@
+package net.tiny.benchmark;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterAll;
+
+public class BenchmarkedStateTest {
+
+    static final AtomicInteger setups = new AtomicInteger();
+    static final AtomicInteger teardowns = new AtomicInteger();
+    static final Set<Object> shared = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    //每个线程各自的数据，不需要同步
+    @State(Scope.THREAD)
+    public static class Data {
+        float[] values;
+        Thread owner;
+
+        @Setup
+        public void setup() {
+            values = new float[256];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (float)i;
+            }
+            setups.incrementAndGet();
+        }
+
+        @TearDown
+        public void tearDown() {
+            values = null;
+            teardowns.incrementAndGet();
+        }
+
+        double norm() {
+            double sum = 0.0d;
+            for (float v : values) {
+                sum += v * v;
+            }
+            return Math.sqrt(sum);
+        }
+    }
+
+    //所有线程共享的计数器
+    @State(Scope.BENCHMARK)
+    public static class Counter {
+        final AtomicLong count = new AtomicLong();
+
+        @TearDown
+        public void tearDown() {
+            assertTrue(count.get() > 0L);
+            teardowns.incrementAndGet();
+        }
+    }
+
+    @State(Scope.SHARED)
+    public static class Cache {
+    }
+
+    //每次调用前打乱数组，打乱的时间不计入测试时间
+    @State(Scope.THREAD)
+    public static class Shuffled {
+        final int[] values = new int[1000];
+        final Random random = new Random();
+
+        @Setup(Level.ITERATION)
+        public void shuffle() {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = random.nextInt();
+            }
+        }
+
+        @TearDown(Level.ITERATION)
+        public void check() {
+            for (int i = 1; i < values.length; i++) {
+                assertTrue(values[i - 1] <= values[i]);
+            }
+        }
+    }
+
+    @Benchmark(measure = 1000, threads = 4)
+    public void testThreadState(Data data, Blackhole blackhole) {
+        // 测试中同一个状态对象只被一个线程使用(JUnit的第一次调用和预热在main线程)
+        if (null == data.owner || data.owner.getName().startsWith("main"))
+            data.owner = Thread.currentThread();
+        assertSame(data.owner, Thread.currentThread());
+        blackhole.consume(data.norm());
+    }
+
+    @Benchmark(measure = 1000, threads = 2)
+    public void testBenchmarkState(Counter counter, Cache cache) {
+        counter.count.incrementAndGet();
+        shared.add(cache);
+    }
+
+    @Benchmark(measure = 100)
+    public void testSharedState(Cache cache, Blackhole blackhole) {
+        shared.add(cache);
+        blackhole.consume(cache);
+    }
+
+    @Benchmark(measure = 1000, threads = 2, latency = true)
+    public void testSort(Shuffled shuffled) {
+        Arrays.sort(shuffled.values);
+    }
+
+    @AfterAll
+    static void tearDownAll() {
+        // Data是4个线程各一个，Counter是一个，Cache在Class结束时才@TearDown
+        assertEquals(4, setups.get());
+        assertEquals(5, teardowns.get());
+        assertEquals(1, shared.size());
+    }
+}
@@ -2,6 +2,9 @@ package net.tiny.benchmark;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.jupiter.api.Test;
 
 public class BenchmarkedTest {
@@ -29,6 +32,47 @@ public class BenchmarkedTest {
         task.norm();
     }
 
+    @Benchmark(warmup=10, measure=1000, latency=true)
+    public void testTaskLatency() throws InterruptedException {
+        task.norm();
+    }
+
+    @Benchmark(duration=200, timeUnit=TimeUnit.MILLISECONDS, threads=2)
+    public void testTaskDuration() throws InterruptedException {
+        task.norm();
+    }
+
+    @Benchmark(rate=1000.0d, measure=100, threads=2)
+    public void testTaskRate() throws InterruptedException {
+        task.norm();
+    }
+
+    @Benchmark(warmup=100000, steady=0.1, measure=1000)
+    public void testTaskSteady() throws InterruptedException {
+        task.norm();
+    }
+
+    @Benchmark(forks=2, warmup=100, measure=1000, jvmArgs={"-Xmx64m"})
+    public void testTaskForks() throws InterruptedException {
+        task.norm();
+    }
+
+    @Benchmark(warmup=100, measure=1000, threads=2)
+    public void testTaskBlackhole(Blackhole blackhole) throws InterruptedException {
+        blackhole.consume(task.norm());
+    }
+
+    @Benchmark(measure=100, inFlight=4, latency=true)
+    public void testTaskAsync(Blackhole blackhole) {
+        blackhole.consume(CompletableFuture.supplyAsync(() -> Math.sqrt(2.0d)));
+    }
+
+    @Benchmark(measure=100000, batchSize=100, operationsPerInvocation=10)
+    public void testTaskBatch(Blackhole blackhole) {
+        for (int i = 0; i < 10; i++) {
+            blackhole.consume(Math.sqrt(i));
+        }
+    }
 
     static class TestTask {
         private float c = 0.0f;
@@ -13,4 +13,19 @@ public class BenchmarkedThreadsTest {
         Thread.sleep(delay);
         assertTrue(true);
     }
+
+    @Benchmark(threads = 200, executor = Execution.VIRTUAL)
+    public void testBenchmarkVirtualThreads() throws InterruptedException {
+        Thread.sleep(10L);
+    }
+
+    @Benchmark(threads = 16, measure = 10, executor = Execution.FORK_JOIN)
+    public void testBenchmarkForkJoin() throws InterruptedException {
+        Thread.sleep(1L);
+    }
+
+    @Benchmark(threads = {1, 2, 4}, measure = 20)
+    public void testBenchmarkScalability() throws InterruptedException {
+        Thread.sleep(1L);
+    }
 }
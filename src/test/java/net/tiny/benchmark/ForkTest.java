@@ -0,0 +1,47 @@
+package net.tiny.benchmark;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+public class ForkTest {
+
+    @Test
+    public void testResultInputStream() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> new byte[16])
+            .latency(true)
+            .execution(Execution.FORK_JOIN)
+            .run(1000L, 2);
+        Benchmarker result = (Benchmarker) read(bench);
+        assertEquals(bench.count(), result.count());
+        assertEquals(bench.ntime, result.ntime);
+        assertEquals(Execution.FORK_JOIN, result.execution);
+        assertEquals(bench.histogram().count(), result.histogram().count());
+        assertEquals(bench.statistics.count(), result.statistics.count());
+    }
+
+    @Test
+    public void testRejectOtherClass() throws Exception {
+        assertThrows(InvalidClassException.class, () -> read(new ArrayList<>()));
+        assertThrows(InvalidClassException.class, () -> read(new java.util.Date()));
+    }
+
+    private static Object read(Object obj) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(obj);
+        }
+        try (ObjectInputStream in = new Fork.ResultInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
+    }
+}
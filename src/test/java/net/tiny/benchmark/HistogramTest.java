@@ -0,0 +1,52 @@
+package net.tiny.benchmark;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testPercentile() {
+        Histogram histogram = new Histogram();
+        for (long v = 1L; v <= 10000L; v++) {
+            histogram.record(v * 1000L);
+        }
+        assertEquals(10000L, histogram.count());
+        assertEquals(1000L, histogram.min());
+        assertEquals(10000000L, histogram.max());
+        assertEquals(5000500.0d, histogram.mean(), 0.001d);
+        assertEquals(5000000L, histogram.percentile(50.0d), 5000000L / 64L);
+        assertEquals(9900000L, histogram.percentile(99.0d), 9900000L / 64L);
+        assertEquals(9990000L, histogram.percentile(99.9d), 9990000L / 64L);
+        assertEquals(10000000L, histogram.percentile(100.0d));
+        System.out.println(histogram.toString());
+    }
+
+    @Test
+    public void testSmallValues() {
+        Histogram histogram = new Histogram();
+        for (long v = 0L; v < 100L; v++) {
+            histogram.record(v);
+        }
+        assertEquals(49L, histogram.percentile(50.0d));
+        assertEquals(98L, histogram.percentile(99.0d));
+        assertEquals(99L, histogram.max());
+    }
+
+    @Test
+    public void testAdd() {
+        Histogram one = new Histogram();
+        Histogram two = new Histogram();
+        one.record(100L);
+        two.record(Long.MAX_VALUE);
+        one.add(two);
+        assertEquals(2L, one.count());
+        assertEquals(100L, one.min());
+        assertEquals(Long.MAX_VALUE, one.max());
+        assertEquals(Long.MAX_VALUE, one.percentile(99.0d));
+        one.clear();
+        assertEquals(0L, one.count());
+        assertEquals(0L, one.percentile(50.0d));
+    }
+}
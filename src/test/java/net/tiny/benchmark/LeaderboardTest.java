@@ -0,0 +1,54 @@
+package net.tiny.benchmark;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class LeaderboardTest {
+
+    @Test
+    public void testQuantile() {
+        assertEquals(12.706d, Leaderboard.quantile(1.0d), 0.001d);
+        assertEquals(2.228d, Leaderboard.quantile(10.0d), 0.001d);
+        assertEquals(1.984d, Leaderboard.quantile(100.0d), 0.001d);
+        assertTrue(Double.isNaN(Leaderboard.error(Statistics.load(new double[] {1.0d}))));
+        assertEquals(0.0d, Leaderboard.error(Statistics.load(new double[] {5.0d, 5.0d, 5.0d})));
+    }
+
+    @Test
+    public void testRanking() throws Exception {
+        Benchmarker slow = new Benchmarker();
+        slow.target(() -> {
+            try {
+                Thread.sleep(1L);
+            } catch (InterruptedException e) {
+            }
+            return null;
+        }).run(50L);
+        Benchmarker fast = new Benchmarker();
+        fast.target(() -> Math.sqrt(2.0d)).run(100000L);
+
+        Leaderboard board = new Leaderboard(null);
+        board.add("slow", "", true, slow);
+        board.add("fast", "", false, fast);
+        board.add("other", "", false, fast);
+        assertEquals(3, board.size());
+        List<Leaderboard.Entry> ranking = board.ranking();
+        assertEquals("slow", ranking.get(2).method);
+        assertEquals(1.0d, board.speedup(ranking.get(2)));
+        assertTrue(board.speedup(ranking.get(0)) > 10.0d);
+        String table = board.toString();
+        System.out.println(table);
+        assertTrue(table.contains("1.00x(baseline)"));
+        assertTrue(table.contains("speedup"));
+
+        // 线程数不同时没有比较的基准
+        Benchmarker threads = new Benchmarker();
+        threads.target(() -> Math.sqrt(2.0d)).run(1000L, 2);
+        board.add("threads", "", false, threads);
+        assertTrue(Double.isNaN(board.speedup(board.ranking().stream()
+                .filter(e -> e.method.equals("threads")).findFirst().get())));
+    }
+}
@@ -0,0 +1,57 @@
+package net.tiny.benchmark;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class ResultTest {
+
+    @Test
+    public void testJsonAndCsv() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> Math.sqrt(2.0d))
+            .latency(true)
+            .run(10000L, 2);
+        Result result = new Result("a.B", "test", "size=\"1,2\"", 0, bench);
+        assertEquals(2, result.threads());
+        assertEquals(20000L, result.iterations());
+        assertTrue(result.opsPerSecond() > 0.0d);
+        String json = result.toJson();
+        System.out.println(json);
+        assertTrue(json.startsWith("{\"class\":\"a.B\",\"method\":\"test\",\"params\":\"size=\\\"1,2\\\"\""));
+        assertTrue(json.contains("\"iterations\":20000"));
+        String csv = result.toCsv();
+        assertTrue(csv.startsWith("a.B,test,\"size=\"\"1,2\"\"\",2,0,1,1,20000,"));
+        assertEquals(Result.COLUMNS.length, Result.csvHeader().split(",").length);
+        assertEquals(Result.COLUMNS.length, csv.split(",").length - 1);
+        // 计时窗口的吞吐量是各线程的，环境信息不在JSON的每个结果中
+        assertTrue(json.contains("\"threadMean\":"));
+        assertFalse(json.contains("\"java\":"));
+        assertTrue(csv.endsWith("," + Runtime.getRuntime().availableProcessors()));
+    }
+
+    @Test
+    public void testWriter() throws Exception {
+        Path dir = Files.createTempDirectory("benchmark");
+        Benchmarker bench = new Benchmarker();
+        bench.target(() -> Math.sqrt(2.0d)).run(1000L);
+        try (ResultWriter writer = new ResultWriter(dir.resolve("report"), "a.B")) {
+            writer.write(new Result("a.B", "one", "", 0, bench));
+            writer.write(new Result("a.B", "two", "", 0, bench));
+        }
+        String json = new String(Files.readAllBytes(dir.resolve("report/a.B.json")), StandardCharsets.UTF_8);
+        assertTrue(json.startsWith("{\"environment\":{\"java\":"));
+        assertTrue(json.contains("\"method\":\"one\""));
+        assertTrue(json.contains("},\n{\"class\":\"a.B\",\"method\":\"two\""));
+        assertTrue(json.trim().endsWith("]}"));
+        List<String> lines = Files.readAllLines(dir.resolve("report/a.B.csv"), StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals(Result.csvHeader(), lines.get(0));
+        assertTrue(lines.get(2).startsWith("a.B,two,,1,0,1,1,1000,"));
+    }
+}
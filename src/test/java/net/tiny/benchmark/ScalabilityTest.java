@@ -0,0 +1,49 @@
+package net.tiny.benchmark;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class ScalabilityTest {
+
+    @Test
+    public void testUniversalScalability() {
+        final int[] levels = new int[] {1, 2, 4, 8, 16, 32};
+        final double[] throughput = new double[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            final int n = levels[i];
+            throughput[i] = 1000.0d * n / (1.0d + 0.05d * (n - 1) + 0.002d * n * (n - 1));
+        }
+        Scalability usl = new Scalability(levels, throughput);
+        System.out.println(usl.toString());
+        assertEquals(0.05d, usl.sigma(), 1e-6d);
+        assertEquals(0.002d, usl.kappa(), 1e-6d);
+        assertEquals(22, usl.peak());
+        assertEquals(1.0d, usl.efficiency(0), 1e-9d);
+        assertEquals(throughput[3], usl.predict(8), 1e-6d);
+    }
+
+    @Test
+    public void testAmdahl() {
+        final int[] levels = new int[] {1, 2, 4, 8};
+        final double[] throughput = new double[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            final int n = levels[i];
+            throughput[i] = 500.0d * n / (1.0d + 0.1d * (n - 1));
+        }
+        Scalability usl = new Scalability(levels, throughput);
+        assertEquals(0.0d, usl.kappa(), 1e-6d);
+        assertEquals(Integer.MAX_VALUE, usl.peak());
+        assertEquals(0.1d, usl.sigma(), 1e-6d);
+        assertTrue(usl.efficiency(3) < usl.efficiency(2));
+    }
+
+    @Test
+    public void testLinear() {
+        Scalability usl = new Scalability(new int[] {1, 2, 4}, new double[] {100.0d, 200.0d, 400.0d});
+        assertEquals(0.0d, usl.sigma(), 1e-9d);
+        assertEquals(0.0d, usl.kappa(), 1e-9d);
+        assertEquals(1.0d, usl.efficiency(2), 1e-9d);
+        assertThrows(IllegalArgumentException.class, () -> new Scalability(new int[] {1}, new double[0]));
+    }
+}
@@ -2,6 +2,8 @@ package net.tiny.benchmark;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.stream.IntStream;
+
 import org.junit.jupiter.api.Test;
 
 public class StatisticsTest {
@@ -58,7 +60,7 @@ public class StatisticsTest {
         assertEquals(5.0, statistics.product());
         assertEquals(0.0d, statistics.variance());
         assertEquals(0.0d, statistics.sdev());
-        assertEquals(5.0d, statistics.geometricMean());
+        assertEquals(5.0d, statistics.geometricMean(), 0.000000000001d);
 
         System.out.println(statistics.toString());
     }
@@ -88,4 +90,83 @@ public class StatisticsTest {
             System.out.println(" " + d);
         }
     }
+
+    @Test
+    public void testBoundedSamples() {
+        Statistics statistics = new Statistics(100);
+        for(int i=0; i<1000000; i++) {
+            statistics.push(1000.0d + (i % 10));
+        }
+        assertEquals(1000000L, statistics.count());
+        assertEquals(100, statistics.samples().length);
+        assertEquals(1009.0d, statistics.samples()[99]);
+        assertEquals(1004.5d, statistics.average(), 0.00001d);
+        assertEquals(8.25d, statistics.variance(), 0.00001d);
+        assertTrue(Double.isFinite(statistics.geometricMean()));
+        assertEquals(1004.496d, statistics.geometricMean(), 0.001d);
+        statistics.clear();
+        assertEquals(0L, statistics.count());
+        assertEquals(0, statistics.samples().length);
+        assertEquals(0.0d, statistics.variance());
+    }
+
+    @Test
+    public void testGeometricMeanUnderflow() {
+        // 乘积是非正规数(1e-320)，精度已经损失
+        Statistics statistics = Statistics.load(new double[] {1.0e-160d, 1.0e-160d});
+        assertEquals(1.0e-160d, statistics.geometricMean(), 1.0e-172d);
+        statistics = Statistics.load(new double[] {1.0e160d, 1.0e160d, 1.0e160d});
+        assertTrue(Double.isInfinite(statistics.product()));
+        assertEquals(1.0e160d, statistics.geometricMean(), 1.0e148d);
+    }
+
+    @Test
+    public void testCombine() {
+        double[] data={5.0, 4.3, 8.7, 4.3, 8.2, 1.3, 9.1, 10.8};
+        Statistics one = new Statistics();
+        Statistics two = new Statistics();
+        for(int i=0; i<data.length; i++) {
+            if (i < 3)
+                one.push(data[i]);
+            else
+                two.push(data[i]);
+        }
+        one.combine(two);
+        Statistics all = Statistics.load(data);
+        assertEquals(all.count(), one.count());
+        assertEquals(all.sum(), one.sum());
+        assertEquals(all.min(), one.min());
+        assertEquals(all.max(), one.max());
+        assertEquals(all.variance(), one.variance(), 0.0000001d);
+        assertEquals(all.geometricMean(), one.geometricMean(), 0.0000001d);
+        assertArrayEquals(data, one.samples());
+    }
+
+    @Test
+    public void testCollector() {
+        Statistics all = Statistics.load(IntStream.range(0, 1000000).mapToDouble(i -> 1.0d + i % 1000));
+        Statistics parallel = Statistics.load(IntStream.range(0, 1000000).parallel().mapToObj(i -> 1.0d + i % 1000));
+        assertEquals(1000000L, parallel.count());
+        assertEquals(all.count(), parallel.count());
+        assertEquals(all.sum(), parallel.sum());
+        assertEquals(1.0d, parallel.min());
+        assertEquals(1000.0d, parallel.max());
+        assertEquals(all.average(), parallel.average(), 0.0000001d);
+        assertEquals(all.variance(), parallel.variance(), 0.0001d);
+        assertEquals(all.geometricMean(), parallel.geometricMean(), 0.0000001d);
+        assertEquals(Statistics.CAPACITY, parallel.samples().length);
+    }
+
+    @Test
+    public void testCoefficientOfVariation() {
+        Statistics statistics = new Statistics();
+        assertTrue(Double.isNaN(statistics.cv(5)));
+        statistics.push(1000.0d);
+        statistics.push(10.0d);
+        for(int i=0; i<5; i++) {
+            statistics.push(100.0d);
+        }
+        assertEquals(0.0d, statistics.cv(5));
+        assertTrue(statistics.cv(7) > 1.0d);
+    }
 }
@@ -0,0 +1,90 @@
+package net.tiny.benchmark;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+public class TraceSinkTest {
+
+    @Test
+    public void testPublishFromThreads() throws Exception {
+        TraceSink sink = new TraceSink(4096);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final String prefix = "t" + i;
+            threads[i] = new Thread(() -> {
+                for (long n = 1L; n <= 500L; n++) {
+                    assertTrue(sink.publish(prefix, out, n, 1000000L, 1.0d));
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        sink.flush();
+        String[] lines = buffer.toString().split(System.lineSeparator());
+        assertEquals(2000, lines.length);
+        assertEquals(0L, sink.dropped());
+        // 同一个线程的记录按顺序输出
+        long last = 0L;
+        for (String line : lines) {
+            if (line.startsWith("t0[")) {
+                long n = Long.parseLong(line.substring(3, 10));
+                assertEquals(last + 1L, n);
+                last = n;
+            }
+        }
+        assertEquals(500L, last);
+        assertTrue(lines[0].endsWith("\t1ms\t1.000K/s"), lines[0]);
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        TraceSink sink = new TraceSink(4);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true);
+        int published = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (sink.publish("full", out, i, 1L, 1.0d))
+                published++;
+        }
+        sink.flush();
+        assertEquals(10000L, published + sink.dropped());
+        // 丢弃的个数输出到记录的PrintStream
+        long reported = 0L;
+        for (String line : buffer.toString().split(System.lineSeparator())) {
+            if (line.startsWith("trace: "))
+                reported += Long.parseLong(line.split(" ")[1]);
+        }
+        assertEquals(sink.dropped(), reported);
+        assertThrows(IllegalArgumentException.class, () -> new TraceSink(3));
+    }
+
+    @Test
+    public void testDurationWindows() throws Exception {
+        Benchmarker bench = new Benchmarker();
+        TestTask task = new TestTask();
+        bench.target(() -> task.sleep())
+            .run("window", Duration.ofMillis(200L), 2);
+        bench.metric("Window", System.out);
+        // 每个线程按时间分成约10个计时窗口
+        assertTrue(bench.statistics.count() >= 10L, bench.statistics.toString());
+    }
+
+    static class TestTask {
+        Object sleep() {
+            try {
+                Thread.sleep(2L);
+            } catch (InterruptedException e) {
+            }
+            return null;
+        }
+    }
+}